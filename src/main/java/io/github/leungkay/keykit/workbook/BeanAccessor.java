@@ -0,0 +1,77 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>一个类和一组字段的取值计划，按类和字段缓存，多次导出共用。</p>
+ * <p>每个字段预先找好getter并生成MethodHandle，导出时直接调用，不再反射查找。</p>
+ * <p>和BeanBinding一样缓存挂在类上，类被卸载时一起回收。</p>
+ */
+class BeanAccessor {
+    // 类 -> 字段 -> 取值计划
+    private static final ClassValue<Map<List<String>, BeanAccessor>> CACHE = new ClassValue<Map<List<String>, BeanAccessor>>() {
+        @Override
+        protected Map<List<String>, BeanAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final MethodHandle[] getters;
+
+    private BeanAccessor(Class<?> clazz, String[] fields) {
+        Map<String, Method> getters = new HashMap<>();
+        for (Method method : clazz.getMethods()) {
+            if (method.getParameterCount() == 0 && !Modifier.isStatic(method.getModifiers()) && method.getName().startsWith("get")) {
+                getters.put(method.getName(), method);
+            }
+        }
+        this.getters = new MethodHandle[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i];
+            Method getter = field == null || field.isEmpty() ? null
+                    : getters.get("get" + field.toUpperCase().charAt(0) + field.substring(1));
+            if (getter != null) {
+                this.getters[i] = unreflect(getter).asType(GETTER_TYPE);
+            }
+        }
+    }
+
+    static BeanAccessor of(Class<?> clazz, String... fields) {
+        return CACHE.get(clazz).computeIfAbsent(Arrays.asList(fields.clone()), k -> new BeanAccessor(clazz, fields));
+    }
+
+    /**
+     * @param bean  对象
+     * @param index 字段的序号
+     * @return 字段的值，没有对应的getter时返回null
+     */
+    @SneakyThrows
+    Object get(Object bean, int index) {
+        MethodHandle getter = index < getters.length ? getters[index] : null;
+        return getter == null ? null : (Object) getter.invokeExact(bean);
+    }
+
+    @SneakyThrows
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 非public的类中的public方法
+            method.setAccessible(true);
+            return LOOKUP.unreflect(method);
+        }
+    }
+}
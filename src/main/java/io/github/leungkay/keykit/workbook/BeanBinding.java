@@ -0,0 +1,366 @@
+package io.github.leungkay.keykit.workbook;
+
+import io.github.leungkay.keykit.date.DatePattern;
+import lombok.SneakyThrows;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>一个类和一组字段的绑定计划，按类和字段缓存，多次读取共用。</p>
+ * <p>每一列预先找好setter，按单元格值的类型生成一次MethodHandle（包括类型转换），之后同类型的值直接调用，不再反射查找。</p>
+ * <p>缓存挂在类上（ClassValue），类被卸载时绑定计划一起回收，不会阻止应用的类加载器被回收。</p>
+ */
+class BeanBinding<T> {
+    // 类 -> 字段 -> 绑定计划
+    private static final ClassValue<Map<List<String>, BeanBinding<?>>> CACHE = new ClassValue<Map<List<String>, BeanBinding<?>>>() {
+        @Override
+        protected Map<List<String>, BeanBinding<?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType DOUBLE_SETTER_TYPE = MethodType.methodType(void.class, Object.class, double.class);
+    private static final MethodType BOOLEAN_SETTER_TYPE = MethodType.methodType(void.class, Object.class, boolean.class);
+    // 来源类型 -> 目标类型 -> 转换方法
+    private static final Map<Class<?>, Map<Class<?>, MethodHandle>> COERCIONS = new HashMap<>();
+    // 没有可用的setter
+    private static final MethodHandle SKIP;
+    private static final DateTimeFormatter STANDARD_DATE = DatePattern.STANDARD_DATE.pattern();
+    private static final DateTimeFormatter COMPACT_DATE = DatePattern.COMPACT_DATE.pattern();
+    private static final DateTimeFormatter STANDARD_DATETIME = DatePattern.STANDARD_DATETIME.pattern();
+    private static final DateTimeFormatter COMPACT_DATETIME = DatePattern.COMPACT_DATETIME.pattern();
+
+    static {
+        try {
+            SKIP = LOOKUP.findStatic(BeanBinding.class, "skip", SETTER_TYPE);
+            coercion(Double.class, Integer.class, "doubleToInteger");
+            coercion(Double.class, Long.class, "doubleToLong");
+            coercion(Double.class, Float.class, "doubleToFloat");
+            coercion(Double.class, Short.class, "doubleToShort");
+            coercion(Double.class, Byte.class, "doubleToByte");
+            coercion(Double.class, BigDecimal.class, "doubleToBigDecimal");
+            coercion(Double.class, String.class, "doubleToString");
+            coercion(Double.class, LocalDate.class, "doubleToLocalDate");
+            coercion(Double.class, LocalDateTime.class, "doubleToLocalDateTime");
+            coercion(String.class, Integer.class, "stringToInteger");
+            coercion(String.class, Long.class, "stringToLong");
+            coercion(String.class, Double.class, "stringToDouble");
+            coercion(String.class, Float.class, "stringToFloat");
+            coercion(String.class, BigDecimal.class, "stringToBigDecimal");
+            coercion(String.class, Boolean.class, "stringToBoolean");
+            coercion(String.class, LocalDate.class, "stringToLocalDate");
+            coercion(String.class, LocalDateTime.class, "stringToLocalDateTime");
+            coercion(Boolean.class, String.class, "booleanToString");
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle constructor;
+    private final Column[] columns;
+
+    private BeanBinding(Class<T> clazz, String[] fields) {
+        this.constructor = constructor(clazz);
+        Map<String, List<Method>> setters = new HashMap<>();
+        for (Method method : clazz.getMethods()) {
+            if (method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers()) && method.getName().startsWith("set")) {
+                setters.computeIfAbsent(method.getName(), name -> new ArrayList<>()).add(method);
+            }
+        }
+        this.columns = new Column[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i];
+            List<Method> methods = field == null || field.isEmpty() ? null
+                    : setters.get("set" + field.toUpperCase().charAt(0) + field.substring(1));
+            this.columns[i] = new Column(methods == null ? Collections.emptyList() : methods);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> BeanBinding<T> of(Class<T> clazz, String... fields) {
+        return (BeanBinding<T>) CACHE.get(clazz).computeIfAbsent(Arrays.asList(fields.clone()), k -> new BeanBinding<>(clazz, fields));
+    }
+
+    @SuppressWarnings("unchecked")
+    @SneakyThrows
+    T newInstance() {
+        return (T) constructor.invokeExact();
+    }
+
+    /**
+     * 找不到setter或者类型转换失败时不处理，空值不处理
+     */
+    @SneakyThrows
+    void set(T bean, int index, Object data) {
+        if (data == null)
+            return;
+        MethodHandle setter = columns[index].get(data.getClass());
+        if (setter == SKIP)
+            return;
+        try {
+            setter.invokeExact((Object) bean, data);
+        } catch (Exception e) {
+            // 调用失败不处理
+        }
+    }
+
+    /**
+     * 数字单元格，setter参数是基本数字类型时不装箱
+     */
+    @SneakyThrows
+    void setDouble(T bean, int index, double data) {
+        try {
+            columns[index].getDouble().invokeExact((Object) bean, data);
+        } catch (Exception e) {
+            // 调用失败不处理
+        }
+    }
+
+    /**
+     * 布尔单元格，setter参数是boolean时不装箱
+     */
+    @SneakyThrows
+    void setBoolean(T bean, int index, boolean data) {
+        try {
+            columns[index].getBoolean().invokeExact((Object) bean, data);
+        } catch (Exception e) {
+            // 调用失败不处理
+        }
+    }
+
+    @SneakyThrows
+    private static MethodHandle constructor(Class<?> clazz) {
+        Constructor<?> constructor = clazz.getDeclaredConstructor();
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            constructor.setAccessible(true);
+            handle = LOOKUP.unreflectConstructor(constructor);
+        }
+        return handle.asType(MethodType.methodType(Object.class));
+    }
+
+    @SneakyThrows
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 非public的类中的public方法
+            method.setAccessible(true);
+            return LOOKUP.unreflect(method);
+        }
+    }
+
+    private static void coercion(Class<?> source, Class<?> target, String name) throws NoSuchMethodException, IllegalAccessException {
+        MethodHandle handle = LOOKUP.findStatic(BeanBinding.class, name, MethodType.methodType(target, source));
+        COERCIONS.computeIfAbsent(source, k -> new HashMap<>()).put(target, handle);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+    }
+
+    /**
+     * 一列对应的所有同名setter，按单元格值的类型缓存最终调用的MethodHandle
+     */
+    private static class Column {
+        private final List<Method> setters;
+        private final Map<Class<?>, MethodHandle> bound;
+        // 参数是基本类型的调用 第一次使用时生成
+        private volatile MethodHandle doubleSetter;
+        private volatile MethodHandle booleanSetter;
+
+        Column(List<Method> setters) {
+            this.setters = setters;
+            this.bound = new ConcurrentHashMap<>();
+        }
+
+        MethodHandle getDouble() {
+            MethodHandle handle = doubleSetter;
+            if (handle == null) {
+                doubleSetter = handle = bindDouble();
+            }
+            return handle;
+        }
+
+        MethodHandle getBoolean() {
+            MethodHandle handle = booleanSetter;
+            if (handle == null) {
+                booleanSetter = handle = bindBoolean();
+            }
+            return handle;
+        }
+
+        private MethodHandle bindDouble() {
+            for (Method setter : setters) {
+                if (setter.getParameterTypes()[0] == double.class) {
+                    return unreflect(setter).asType(DOUBLE_SETTER_TYPE);
+                }
+            }
+            // 和装箱时的选择保持一致 有直接兼容Double的setter时仍然装箱
+            for (Method setter : setters) {
+                if (wrap(setter.getParameterTypes()[0]).isAssignableFrom(Double.class)) {
+                    return get(Double.class).asType(DOUBLE_SETTER_TYPE);
+                }
+            }
+            // int long float short byte直接窄化 和Double的xxxValue结果相同
+            for (Method setter : setters) {
+                Class<?> param = setter.getParameterTypes()[0];
+                if (param.isPrimitive() && param != boolean.class && param != char.class) {
+                    MethodHandle target = unreflect(setter).asType(MethodType.methodType(void.class, Object.class, param));
+                    return MethodHandles.explicitCastArguments(target, DOUBLE_SETTER_TYPE);
+                }
+            }
+            return get(Double.class).asType(DOUBLE_SETTER_TYPE);
+        }
+
+        private MethodHandle bindBoolean() {
+            for (Method setter : setters) {
+                if (setter.getParameterTypes()[0] == boolean.class) {
+                    return unreflect(setter).asType(BOOLEAN_SETTER_TYPE);
+                }
+            }
+            return get(Boolean.class).asType(BOOLEAN_SETTER_TYPE);
+        }
+
+        MethodHandle get(Class<?> type) {
+            MethodHandle handle = bound.get(type);
+            return handle != null ? handle : bound.computeIfAbsent(type, this::bind);
+        }
+
+        private MethodHandle bind(Class<?> type) {
+            // 优先使用参数类型直接兼容的setter
+            for (Method setter : setters) {
+                if (wrap(setter.getParameterTypes()[0]).isAssignableFrom(type)) {
+                    return unreflect(setter).asType(SETTER_TYPE);
+                }
+            }
+            Map<Class<?>, MethodHandle> coercions = COERCIONS.get(type);
+            if (coercions == null)
+                return SKIP;
+            for (Method setter : setters) {
+                Class<?> param = setter.getParameterTypes()[0];
+                MethodHandle coercion = coercions.get(wrap(param));
+                if (coercion != null) {
+                    MethodHandle target = unreflect(setter).asType(MethodType.methodType(void.class, Object.class, param));
+                    return MethodHandles.filterArguments(target, 1, coercion.asType(MethodType.methodType(param, Object.class)));
+                }
+            }
+            return SKIP;
+        }
+    }
+
+    private static void skip(Object bean, Object data) {
+    }
+
+    private static Integer doubleToInteger(Double value) {
+        return value.intValue();
+    }
+
+    private static Long doubleToLong(Double value) {
+        return value.longValue();
+    }
+
+    private static Float doubleToFloat(Double value) {
+        return value.floatValue();
+    }
+
+    private static Short doubleToShort(Double value) {
+        return value.shortValue();
+    }
+
+    private static Byte doubleToByte(Double value) {
+        return value.byteValue();
+    }
+
+    private static BigDecimal doubleToBigDecimal(Double value) {
+        return BigDecimal.valueOf(value);
+    }
+
+    static String doubleToString(Double value) {
+        return doubleToString(value.doubleValue());
+    }
+
+    static String doubleToString(double value) {
+        // 整数不带小数点 比如编号列
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static LocalDate doubleToLocalDate(Double value) {
+        return DateUtil.getLocalDateTime(value).toLocalDate();
+    }
+
+    private static LocalDateTime doubleToLocalDateTime(Double value) {
+        return DateUtil.getLocalDateTime(value);
+    }
+
+    private static Integer stringToInteger(String value) {
+        return Integer.valueOf(value.trim());
+    }
+
+    private static Long stringToLong(String value) {
+        return Long.valueOf(value.trim());
+    }
+
+    private static Double stringToDouble(String value) {
+        return Double.valueOf(value.trim());
+    }
+
+    private static Float stringToFloat(String value) {
+        return Float.valueOf(value.trim());
+    }
+
+    private static BigDecimal stringToBigDecimal(String value) {
+        return new BigDecimal(value.trim());
+    }
+
+    private static Boolean stringToBoolean(String value) {
+        return Boolean.valueOf(value.trim());
+    }
+
+    private static LocalDate stringToLocalDate(String value) {
+        value = value.trim();
+        if (value.length() == 8)
+            return LocalDate.parse(value, COMPACT_DATE);
+        // 带时间的只取日期部分
+        return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value, STANDARD_DATE);
+    }
+
+    private static LocalDateTime stringToLocalDateTime(String value) {
+        value = value.trim();
+        switch (value.length()) {
+            case 8:
+                return LocalDate.parse(value, COMPACT_DATE).atStartOfDay();
+            case 10:
+                return LocalDate.parse(value, STANDARD_DATE).atStartOfDay();
+            case 14:
+                return LocalDateTime.parse(value, COMPACT_DATETIME);
+            default:
+                // 忽略毫秒部分
+                return LocalDateTime.parse(value.length() > 19 ? value.substring(0, 19) : value, STANDARD_DATETIME);
+        }
+    }
+
+    private static String booleanToString(Boolean value) {
+        return value.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.leungkay.keykit.workbook;
+
+import java.util.Arrays;
+
+/**
+ * 按列存放的读取结果，通过{@link WorkbookReader#readColumns(String...)}生成。
+ */
+public class ColumnFrame {
+    private final String[] fields;
+    private final ColumnVector[] columns;
+    private final int rowCount;
+
+    ColumnFrame(String[] fields, ColumnVector[] columns, int rowCount) {
+        this.fields = fields;
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public String[] getFields() {
+        return fields.clone();
+    }
+
+    public ColumnVector getColumn(int index) {
+        return columns[index];
+    }
+
+    public ColumnVector getColumn(String field) {
+        int index = Arrays.asList(fields).indexOf(field);
+        if (index < 0) throw new IllegalArgumentException("unknown field: " + field);
+        return columns[index];
+    }
+}
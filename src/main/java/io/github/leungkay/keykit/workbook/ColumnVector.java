@@ -0,0 +1,304 @@
+package io.github.leungkay.keykit.workbook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>按列存放的一列数据，小数存放在double数组中，整数（比如毫秒时间戳）存放在long数组中，布尔值记录在位图中，文本按字典编码存放，空值记录在位图中。</p>
+ * <p>列的类型由第一个非空值决定，后面出现不兼容的值时整列升级：long遇到小数升级成double，数字和布尔值混在一起或者遇到文本时升级成文本。</p>
+ * <p>按类型取值的方法和列的类型不兼容时抛出IllegalStateException，getString可以读取任何类型的列。</p>
+ */
+public class ColumnVector {
+    private final String name;
+    private Type type;
+    private double[] doubles;
+    private long[] longs;
+    // 第i位是1表示第i行是true
+    private long[] booleans;
+    private int[] codes;
+    private List<String> dictionary;
+    private Map<String, Integer> lookup;
+    // 第i位是1表示第i行是空值
+    private long[] nulls;
+    private int size;
+
+    ColumnVector(String name) {
+        this.name = name;
+        this.type = Type.NULL;
+        this.nulls = new long[1];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return DOUBLE或LONG列的数值，空值是0
+     */
+    public double getDouble(int row) {
+        switch (type) {
+            case DOUBLE:
+                return doubles[row];
+            case LONG:
+                return longs[row];
+            default:
+                throw mismatch("getDouble");
+        }
+    }
+
+    /**
+     * @return DOUBLE或LONG列的数值，小数部分直接截掉，空值是0
+     */
+    public long getLong(int row) {
+        switch (type) {
+            case DOUBLE:
+                return (long) doubles[row];
+            case LONG:
+                return longs[row];
+            default:
+                throw mismatch("getLong");
+        }
+    }
+
+    /**
+     * @return BOOLEAN列的值，空值是false
+     */
+    public boolean getBoolean(int row) {
+        if (type != Type.BOOLEAN)
+            throw mismatch("getBoolean");
+        return isTrue(row);
+    }
+
+    /**
+     * @return 文本，数字和布尔值按整列升级成文本时的规则转换，空值是null
+     */
+    public String getString(int row) {
+        if (isNull(row))
+            return null;
+        switch (type) {
+            case STRING:
+                return dictionary.get(codes[row]);
+            case DOUBLE:
+                return BeanBinding.doubleToString(doubles[row]);
+            case LONG:
+                return Long.toString(longs[row]);
+            case BOOLEAN:
+                return Boolean.toString(isTrue(row));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return DOUBLE列的数据，长度等于行数，不要修改
+     */
+    public double[] getDoubles() {
+        return doubles;
+    }
+
+    /**
+     * @return LONG列的数据，长度等于行数，不要修改
+     */
+    public long[] getLongs() {
+        return longs;
+    }
+
+    /**
+     * @return STRING列每一行在字典中的序号，空值的序号是0，长度等于行数，不要修改
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * @return STRING列的字典，按首次出现的顺序排列
+     */
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    void append(Object data) {
+        ensureCapacity(size + 1);
+        if (data == null || "".equals(data)) {
+            nulls[size >>> 6] |= 1L << size;
+        } else if (data instanceof Double) {
+            appendDouble((Double) data);
+        } else if (data instanceof Boolean) {
+            appendBoolean((Boolean) data);
+        } else if (data instanceof Long) {
+            appendLong((Long) data);
+        } else {
+            appendString(data.toString());
+        }
+        size++;
+    }
+
+    void append(double value) {
+        ensureCapacity(size + 1);
+        appendDouble(value);
+        size++;
+    }
+
+    void append(boolean value) {
+        ensureCapacity(size + 1);
+        appendBoolean(value);
+        size++;
+    }
+
+    private void appendDouble(double value) {
+        if (type == Type.NULL || type == Type.LONG) {
+            convert(Type.DOUBLE);
+        } else if (type == Type.BOOLEAN) {
+            convert(Type.STRING);
+        }
+        if (type == Type.DOUBLE) {
+            doubles[size] = value;
+        } else {
+            codes[size] = encode(BeanBinding.doubleToString(value));
+        }
+    }
+
+    private void appendLong(long value) {
+        if (type == Type.NULL) {
+            convert(Type.LONG);
+        } else if (type == Type.BOOLEAN) {
+            convert(Type.STRING);
+        }
+        switch (type) {
+            case LONG:
+                longs[size] = value;
+                break;
+            case DOUBLE:
+                doubles[size] = value;
+                break;
+            default:
+                codes[size] = encode(Long.toString(value));
+        }
+    }
+
+    private void appendBoolean(boolean value) {
+        if (type == Type.NULL) {
+            convert(Type.BOOLEAN);
+        } else if (type != Type.BOOLEAN) {
+            convert(Type.STRING);
+        }
+        if (type == Type.BOOLEAN) {
+            if (value) {
+                booleans[size >>> 6] |= 1L << size;
+            }
+        } else {
+            codes[size] = encode(Boolean.toString(value));
+        }
+    }
+
+    private void appendString(String value) {
+        if (type != Type.STRING) {
+            convert(Type.STRING);
+        }
+        codes[size] = encode(value);
+    }
+
+    private boolean isTrue(int row) {
+        return (booleans[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private int encode(String value) {
+        Integer code = lookup.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            lookup.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * 把已有的数据转换成新的类型
+     */
+    private void convert(Type target) {
+        int capacity = nulls.length << 6;
+        switch (target) {
+            case DOUBLE:
+                doubles = new double[capacity];
+                for (int i = 0; i < size && longs != null; i++) {
+                    doubles[i] = longs[i];
+                }
+                longs = null;
+                break;
+            case LONG:
+                longs = new long[capacity];
+                break;
+            case BOOLEAN:
+                booleans = new long[nulls.length];
+                break;
+            default:
+                codes = new int[capacity];
+                dictionary = new ArrayList<>();
+                lookup = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    if (!isNull(i)) {
+                        codes[i] = encode(getString(i));
+                    }
+                }
+                doubles = null;
+                longs = null;
+                booleans = null;
+        }
+        type = target;
+    }
+
+    private IllegalStateException mismatch(String accessor) {
+        return new IllegalStateException("column '" + name + "' is " + type + ", cannot " + accessor);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= nulls.length << 6)
+            return;
+        nulls = Arrays.copyOf(nulls, nulls.length * 2);
+        int length = nulls.length << 6;
+        if (doubles != null) doubles = Arrays.copyOf(doubles, length);
+        if (longs != null) longs = Arrays.copyOf(longs, length);
+        if (booleans != null) booleans = Arrays.copyOf(booleans, nulls.length);
+        if (codes != null) codes = Arrays.copyOf(codes, length);
+    }
+
+    /**
+     * 读取结束后去掉多余的容量，释放字典的哈希表
+     */
+    void trim() {
+        if (doubles != null) doubles = Arrays.copyOf(doubles, size);
+        if (longs != null) longs = Arrays.copyOf(longs, size);
+        if (codes != null) codes = Arrays.copyOf(codes, size);
+        if (dictionary != null) dictionary = Collections.unmodifiableList(new ArrayList<>(dictionary));
+        nulls = Arrays.copyOf(nulls, Math.max(1, (size + 63) >>> 6));
+        if (booleans != null) booleans = Arrays.copyOf(booleans, nulls.length);
+        lookup = null;
+    }
+
+    public enum Type {
+        /**
+         * 整列都是空值
+         */
+        NULL,
+        DOUBLE,
+        LONG,
+        BOOLEAN,
+        STRING
+    }
+}
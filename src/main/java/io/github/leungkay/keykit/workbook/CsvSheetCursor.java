@@ -0,0 +1,256 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>把CSV文件当作只有一个表单的工作簿逐行读取，每个字段返回字符串，空字段返回空字符串。</p>
+ * <p>文件按窗口映射到内存，直接在映射的字节上切分字段，只有读取窗口内的字段才解码成字符串。</p>
+ * <p>支持引号包围的字段（字段中可以有分隔符、换行和两个引号转义的引号），只支持分隔符、引号和换行都是单字节ASCII的编码。</p>
+ * <p>UTF-8和ISO-8859-1这类兼容ASCII的编码中，非ASCII字符的每个字节都不小于0x80，可以使用任意ASCII分隔符；
+ * GBK、GB18030、Big5、Shift_JIS等编码中多字节字符的后续字节可能落在0x40-0x7E（GB18030还有0x30-0x39），分隔符不能在这些范围内（比如可以用逗号、分号和制表符，不能用 | @ \ ~）。</p>
+ */
+class CsvSheetCursor implements SheetCursor {
+    // 每次映射的字节数 一行超过这个长度时映射更大的窗口
+    private static final int WINDOW = 64 << 20;
+    private final FileChannel channel;
+    private final long size;
+    private final int window;
+    private final byte delimiter;
+    private final Charset charset;
+    // 读取窗口 [startX, endX) 列和最后一行
+    private final int startX;
+    private final int endX;
+    private final int lastRow;
+    private MappedByteBuffer buffer;
+    // 映射的起始位置在文件中的偏移
+    private long base;
+    // 解码前存放字段内容
+    private byte[] scratch;
+    private Object[] cells;
+    private int filled;
+    private int rowNum;
+
+    CsvSheetCursor(String filePath, ReadOptions options, char delimiter, Charset charset) {
+        this(filePath, options, delimiter, charset, WINDOW);
+    }
+
+    @SneakyThrows
+    CsvSheetCursor(String filePath, ReadOptions options, char delimiter, Charset charset, int window) {
+        checkCharset(delimiter, charset);
+        this.delimiter = (byte) delimiter;
+        this.charset = charset;
+        this.window = window;
+        this.startX = options.getStartX();
+        this.endX = options.getWidth() < 0 ? Integer.MAX_VALUE : startX + options.getWidth();
+        this.lastRow = options.getLastRow();
+        this.scratch = new byte[256];
+        this.cells = new Object[options.getWidth() > 0 ? options.getWidth() : 16];
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            map(0, window);
+            skipBom();
+            // 起始行之前的行只切分不解码
+            for (int i = 0; i < options.getStartY() && hasMore(); i++) {
+                readRow(false);
+            }
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+        this.rowNum = options.getStartY() - 1;
+    }
+
+    @Override
+    public boolean next() {
+        Arrays.fill(cells, 0, filled, null);
+        filled = 0;
+        if (rowNum >= lastRow || !hasMore()) {
+            return false;
+        }
+        rowNum++;
+        readRow(true);
+        return true;
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public Object getData(int x) {
+        int i = x - startX;
+        return i >= 0 && i < filled ? cells[i] : null;
+    }
+
+    @Override
+    public List<CellRangeAddress> getMergedRegions() {
+        return Collections.emptyList();
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        channel.close();
+    }
+
+    private boolean hasMore() {
+        return base + buffer.position() < size;
+    }
+
+    @SneakyThrows
+    private void readRow(boolean decode) {
+        int length = window;
+        int start = buffer.position();
+        // 一行跨过了映射窗口的末尾 从行首重新映射后再切分
+        while (!tryReadRow(decode)) {
+            Arrays.fill(cells, 0, filled, null);
+            filled = 0;
+            // 窗口装不下一整行 扩大窗口
+            if (start == 0) {
+                // 一次最多映射2GB 通常是引号没有闭合 后面的内容都被当成了一个字段
+                if (length == Integer.MAX_VALUE)
+                    throw new IllegalStateException("csv row starting at byte " + base + " is longer than "
+                            + Integer.MAX_VALUE + " bytes, check for an unterminated quote");
+                length = (int) Math.min(length * 2L, Integer.MAX_VALUE);
+            }
+            map(base + start, length);
+            start = 0;
+        }
+    }
+
+    /**
+     * @return 映射窗口内是否有完整的一行
+     */
+    private boolean tryReadRow(boolean decode) {
+        int i = buffer.position();
+        int limit = buffer.limit();
+        boolean eof = base + limit >= size;
+        // 空行没有字段
+        if (i < limit && isLineBreak(buffer.get(i))) {
+            return endRow(i, limit, eof);
+        }
+        int col = 0;
+        while (true) {
+            boolean keep = decode && col >= startX && col < endX;
+            int n = 0;
+            if (i < limit && buffer.get(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= limit) {
+                        // 文件结束时引号没有闭合 已经读到的内容作为字段
+                        if (!eof) return false;
+                        break;
+                    }
+                    byte b = buffer.get(i++);
+                    if (b == '"') {
+                        if (i >= limit && !eof) return false;
+                        if (i >= limit || buffer.get(i) != '"') break;
+                        i++;
+                    }
+                    if (keep) n = append(n, b);
+                }
+                // 闭合引号之后到分隔符之前的内容原样保留
+                while (i < limit && buffer.get(i) != delimiter && !isLineBreak(buffer.get(i))) {
+                    if (keep) n = append(n, buffer.get(i));
+                    i++;
+                }
+            } else {
+                int begin = i;
+                while (i < limit && buffer.get(i) != delimiter && !isLineBreak(buffer.get(i))) {
+                    i++;
+                }
+                if (i >= limit && !eof) return false;
+                if (keep) {
+                    n = i - begin;
+                    ensureScratch(n);
+                    buffer.position(begin);
+                    buffer.get(scratch, 0, n);
+                }
+            }
+            if (i >= limit && !eof) return false;
+            if (keep) {
+                set(col - startX, new String(scratch, 0, n, charset));
+            }
+            if (i < limit && buffer.get(i) == delimiter) {
+                i++;
+                col++;
+                continue;
+            }
+            return endRow(i, limit, eof);
+        }
+    }
+
+    private boolean endRow(int i, int limit, boolean eof) {
+        if (i < limit && buffer.get(i) == '\r') {
+            i++;
+            if (i >= limit && !eof) return false;
+        }
+        if (i < limit && buffer.get(i) == '\n') {
+            i++;
+        }
+        buffer.position(i);
+        return true;
+    }
+
+    private boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private int append(int n, byte b) {
+        ensureScratch(n + 1);
+        scratch[n] = b;
+        return n + 1;
+    }
+
+    private void ensureScratch(int n) {
+        if (n > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(n, scratch.length * 2));
+        }
+    }
+
+    private void set(int i, Object data) {
+        if (i >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(i + 1, cells.length * 2));
+        }
+        cells[i] = data;
+        if (i >= filled) {
+            filled = i + 1;
+        }
+    }
+
+    private void map(long offset, int length) throws IOException {
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(length, size - offset));
+        this.base = offset;
+    }
+
+    private void skipBom() {
+        if (StandardCharsets.UTF_8.equals(charset) && buffer.limit() >= 3
+                && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+            buffer.position(3);
+        }
+    }
+
+    private static void checkCharset(char delimiter, Charset charset) {
+        byte[] probe = (delimiter + "\"\r\n").getBytes(charset);
+        if (delimiter >= 0x80 || !Arrays.equals(probe, new byte[]{(byte) delimiter, '"', '\r', '\n'}))
+            throw new IllegalArgumentException("delimiter and charset must be ASCII compatible");
+        // 按字节切分时 分隔符不能和多字节字符的后续字节相同
+        if (!StandardCharsets.UTF_8.equals(charset) && charset.newEncoder().maxBytesPerChar() > 1
+                && (delimiter >= '0' && delimiter <= '9' || delimiter >= 0x40 && delimiter <= 0x7E))
+            throw new IllegalArgumentException("delimiter '" + delimiter + "' may appear inside multibyte characters of " + charset);
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.leungkay.keykit.workbook;
+
+/**
+ * 读取日期格式的数字单元格时返回的内容
+ */
+public enum DateMode {
+    /**
+     * 返回Excel保存的序列值（Double），不判断单元格格式
+     */
+    RAW,
+    /**
+     * 返回{@link java.time.LocalDate}，忽略时间部分
+     */
+    LOCAL_DATE,
+    /**
+     * 返回{@link java.time.LocalDateTime}
+     */
+    LOCAL_DATE_TIME,
+    /**
+     * 返回按系统时区转换的毫秒时间戳（Long）
+     */
+    EPOCH_MILLI
+}
@@ -0,0 +1,63 @@
+package io.github.leungkay.keykit.workbook;
+
+import io.github.leungkay.keykit.date.DateKit;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * <p>按单元格样式序号缓存是否是日期格式，每个样式只分析一次格式字符串，之后同样式的单元格直接查表。</p>
+ * <p>一个游标使用一个，不是线程安全的。</p>
+ */
+class DateStyleCache {
+    private static final byte UNKNOWN = 0;
+    private static final byte DATE = 1;
+    private static final byte NOT_DATE = 2;
+    private final DateMode mode;
+    private final boolean use1904;
+    // 样式序号 -> 是否是日期格式
+    private final IntPredicate formats;
+    private byte[] styles;
+
+    /**
+     * @param mode    日期的返回类型，不能是{@link DateMode#RAW}
+     * @param use1904 工作簿是否使用1904日期系统
+     * @param formats 判断一个样式是不是日期格式，每个样式只调用一次
+     */
+    DateStyleCache(DateMode mode, boolean use1904, IntPredicate formats) {
+        this.mode = mode;
+        this.use1904 = use1904;
+        this.formats = formats;
+        this.styles = new byte[64];
+    }
+
+    boolean isDate(int style, double value) {
+        if (style < 0 || !DateUtil.isValidExcelDate(value))
+            return false;
+        if (style >= styles.length) {
+            styles = Arrays.copyOf(styles, Math.max(style + 1, styles.length * 2));
+        }
+        if (styles[style] == UNKNOWN) {
+            styles[style] = formats.test(style) ? DATE : NOT_DATE;
+        }
+        return styles[style] == DATE;
+    }
+
+    /**
+     * @param value Excel保存的日期序列值
+     * @return 按日期模式转换后的值
+     */
+    Object decode(double value) {
+        LocalDateTime time = DateUtil.getLocalDateTime(value, use1904);
+        switch (mode) {
+            case LOCAL_DATE:
+                return time.toLocalDate();
+            case EPOCH_MILLI:
+                return DateKit.parse2Milli(time);
+            default:
+                return time;
+        }
+    }
+}
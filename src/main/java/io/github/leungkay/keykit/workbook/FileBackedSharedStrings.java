@@ -0,0 +1,181 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>把共享字符串表写到临时文件中的只读实现，堆内存中只保留一个固定大小的LRU缓存。</p>
+ * <p>数据文件顺序存放每个字符串的UTF-8字节，索引文件存放每个字符串的起始偏移并映射到内存，按序号查找不需要扫描。</p>
+ */
+class FileBackedSharedStrings implements SharedStrings, Closeable {
+    private final File dataFile;
+    private final File indexFile;
+    private final FileChannel data;
+    private final LongBuffer offsets;
+    private final int uniqueCount;
+    private final int count;
+    private final Map<Integer, String> cache;
+
+    @SneakyThrows
+    FileBackedSharedStrings(OPCPackage pkg, int cacheSize) {
+        this.dataFile = TempFile.createTempFile("keykit-sst", ".dat");
+        this.indexFile = TempFile.createTempFile("keykit-sst", ".idx");
+        int[] counts = new int[]{0, 0};
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        try (OutputStream dataOut = new BufferedOutputStream(new FileOutputStream(dataFile), 64 * 1024);
+             DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 64 * 1024))) {
+            indexOut.writeLong(0L);
+            if (!parts.isEmpty()) {
+                try (InputStream in = parts.get(0).getInputStream()) {
+                    write(in, dataOut, indexOut, counts);
+                }
+            }
+        }
+        this.uniqueCount = counts[0];
+        this.count = counts[1];
+        try (FileChannel index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            this.offsets = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size()).asLongBuffer();
+        }
+        this.data = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+        this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    private static void write(InputStream in, OutputStream dataOut, DataOutputStream indexOut, int[] counts) throws XMLStreamException, IOException {
+        XMLStreamReader reader = XMLHelper.newXMLInputFactory().createXMLStreamReader(in);
+        try {
+            long offset = 0;
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                String name = reader.getLocalName();
+                if ("sst".equals(name)) {
+                    String total = reader.getAttributeValue(null, "count");
+                    counts[1] = total == null ? 0 : Integer.parseInt(total);
+                } else if ("si".equals(name)) {
+                    text.setLength(0);
+                    readItem(reader, text);
+                    byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                    dataOut.write(bytes);
+                    offset += bytes.length;
+                    indexOut.writeLong(offset);
+                    counts[0]++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readItem(XMLStreamReader reader, StringBuilder text) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("t".equals(name)) {
+                    text.append(reader.getElementText());
+                } else if ("rPh".equals(name)) {
+                    // 拼音不是内容 和用户模型的取值保持一致
+                    skip(reader);
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    @Override
+    public RichTextString getItemAt(int idx) {
+        return new XSSFRichTextString(getString(idx));
+    }
+
+    @SneakyThrows
+    String getString(int idx) {
+        synchronized (cache) {
+            String value = cache.get(idx);
+            if (value != null)
+                return value;
+        }
+        long start = offsets.get(idx);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (offsets.get(idx + 1) - start));
+        while (buffer.hasRemaining()) {
+            // 按位置读取 多线程共用同一个通道
+            if (data.read(buffer, start + buffer.position()) < 0)
+                break;
+        }
+        String value = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        synchronized (cache) {
+            cache.put(idx, value);
+        }
+        return value;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int getUniqueCount() {
+        return uniqueCount;
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        data.close();
+        if (!dataFile.delete())
+            dataFile.deleteOnExit();
+        // 映射的索引文件在部分系统上要等缓冲区回收后才能删除
+        if (!indexFile.delete())
+            indexFile.deleteOnExit();
+    }
+}
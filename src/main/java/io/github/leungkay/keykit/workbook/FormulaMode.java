@@ -0,0 +1,19 @@
+package io.github.leungkay.keykit.workbook;
+
+/**
+ * 读取公式单元格时返回的内容
+ */
+public enum FormulaMode {
+    /**
+     * 返回公式本身，比如SUM(A1:A3)
+     */
+    FORMULA,
+    /**
+     * 返回文件中保存的上次计算结果，不做计算
+     */
+    CACHED,
+    /**
+     * 用同一个计算器重新计算，计算过的单元格结果在整个读取过程中复用，只支持非流式读取
+     */
+    EVALUATED
+}
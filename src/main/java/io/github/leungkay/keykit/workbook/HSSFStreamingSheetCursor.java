@@ -0,0 +1,478 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.FormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MergeCellsRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.RecordInputStream;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.hssf.record.SharedValueRecordBase;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>按记录逐行解析xls文件的游标，内存中只保留全局记录和当前行的单元格，占用的内存和表单行数无关。</p>
+ * <p>使用HSSF事件模型底层的{@link RecordFactoryInputStream}按需拉取记录，不需要像{@code HSSFEventFactory}那样一次性推送整个文件。</p>
+ * <p>返回值和{@link UserModelSheetCursor}保持一致，唯一的区别是数组公式的单元格无法还原公式内容，此时返回公式的缓存结果。</p>
+ */
+class HSSFStreamingSheetCursor implements SheetCursor {
+    private static final Object NUMBER = new Object();
+    private final POIFSFileSystem fs;
+    private final RecordFactoryInputStream records;
+    // 收集全局记录 渲染公式时生成只有全局信息的工作簿
+    private final EventWorkbookBuilder.SheetRecordCollectingListener globals;
+    private final SSTRecord sst;
+    private final List<CellRangeAddress> regions;
+    private final List<SharedFormulaRecord> sharedFormulas;
+    private final boolean cachedFormula;
+    // 不转换日期时为null
+    private final DateStyleCache dates;
+    // 读取窗口 [startX, endX) 列和最后一行
+    private final int startX;
+    private final int endX;
+    private final int lastRow;
+    private HSSFWorkbook stub;
+    // 当前行窗口内的单元格 按列号减startX存放 数字存放在numbers中 cells中放NUMBER
+    private Object[] cells;
+    private double[] numbers;
+    private int filled;
+    private int rowNum;
+    // 已经出现过的最后一行 包括只有格式没有单元格的行
+    private int maxRow;
+    // 读到但属于后面行的记录
+    private Record pushback;
+    // 表单中嵌套的图表等子流的深度
+    private int depth;
+    private boolean exhausted;
+
+    @SneakyThrows
+    HSSFStreamingSheetCursor(String filePath, int index, ReadOptions options) {
+        this.fs = new POIFSFileSystem(new File(filePath), true);
+        try {
+            this.regions = options.isMerged() ? scanMergedRegions(fs, index) : Collections.emptyList();
+            this.records = new RecordFactoryInputStream(openWorkbookStream(fs), true);
+            List<Record> formats = new ArrayList<>();
+            this.globals = readGlobals(records, formats);
+            this.sst = globals.getSSTRecord();
+            this.dates = options.getDateMode() == DateMode.RAW ? null : newDateStyleCache(options.getDateMode(), formats);
+            seekSheet(index);
+        } catch (Exception e) {
+            fs.close();
+            throw e;
+        }
+        this.sharedFormulas = new ArrayList<>();
+        this.cachedFormula = options.getFormulaMode() == FormulaMode.CACHED;
+        this.startX = options.getStartX();
+        this.endX = options.getWidth() < 0 ? Integer.MAX_VALUE : startX + options.getWidth();
+        this.lastRow = options.getLastRow();
+        this.cells = new Object[options.getWidth() > 0 ? options.getWidth() : 16];
+        this.numbers = new double[cells.length];
+        this.rowNum = options.getStartY() - 1;
+        this.maxRow = -1;
+        this.depth = 1;
+    }
+
+    /**
+     * @param filePath xls文件路径
+     * @return 表单数量，只读取全局记录
+     */
+    @SneakyThrows
+    static int getSheetCount(String filePath) {
+        try (POIFSFileSystem fs = new POIFSFileSystem(new File(filePath), true)) {
+            return readGlobals(new RecordFactoryInputStream(openWorkbookStream(fs), true), null).getBoundSheetRecords().length;
+        }
+    }
+
+    @Override
+    public boolean next() {
+        Arrays.fill(cells, 0, filled, null);
+        filled = 0;
+        if (rowNum >= lastRow) {
+            return false;
+        }
+        rowNum++;
+        while (true) {
+            Record record = nextRecord();
+            // 表单结束 只有格式的行也作为空行返回
+            if (record == null) {
+                return rowNum <= maxRow;
+            }
+            int row;
+            if (record instanceof CellValueRecordInterface) {
+                row = ((CellValueRecordInterface) record).getRow();
+            } else if (record instanceof MulBlankRecord) {
+                row = ((MulBlankRecord) record).getRow();
+            } else {
+                if (record instanceof RowRecord) {
+                    maxRow = Math.max(maxRow, ((RowRecord) record).getRowNumber());
+                } else if (record instanceof SharedFormulaRecord) {
+                    sharedFormulas.add((SharedFormulaRecord) record);
+                }
+                continue;
+            }
+            maxRow = Math.max(maxRow, row);
+            // 起始行之前的单元格直接跳过
+            if (row < rowNum) {
+                continue;
+            }
+            // 文件中这一行没有单元格 作为空行返回
+            if (row > rowNum) {
+                pushback = record;
+                return true;
+            }
+            readCell(record);
+        }
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public Object getData(int x) {
+        int i = x - startX;
+        if (i < 0 || i >= filled)
+            return null;
+        return cells[i] == NUMBER ? (Object) numbers[i] : cells[i];
+    }
+
+    @Override
+    public void pushData(int x, RowProcessor<?> processor, int index) {
+        int i = x - startX;
+        Object data = i >= 0 && i < filled ? cells[i] : null;
+        if (data == NUMBER) {
+            processor.pushDouble(index, numbers[i]);
+        } else {
+            SheetCursor.super.pushData(x, processor, index);
+        }
+    }
+
+    @Override
+    public List<CellRangeAddress> getMergedRegions() {
+        return regions;
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        fs.close();
+    }
+
+    /**
+     * @return 当前表单的下一条记录，表单结束时返回null
+     */
+    private Record nextRecord() {
+        if (pushback != null) {
+            Record record = pushback;
+            pushback = null;
+            return record;
+        }
+        while (!exhausted) {
+            Record record = records.nextRecord();
+            if (record == null) {
+                exhausted = true;
+            } else if (record instanceof BOFRecord) {
+                depth++;
+            } else if (record instanceof EOFRecord) {
+                exhausted = --depth == 0;
+            } else if (depth == 1) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    private void readCell(Record record) {
+        if (record instanceof MulBlankRecord) {
+            MulBlankRecord blanks = (MulBlankRecord) record;
+            for (int col = blanks.getFirstColumn(); col <= blanks.getLastColumn(); col++) {
+                if (col >= startX && col < endX) {
+                    set(col - startX, "");
+                }
+            }
+            return;
+        }
+        int col = ((CellValueRecordInterface) record).getColumn();
+        if (col < startX || col >= endX)
+            return;
+        int i = col - startX;
+        // 数字不装箱
+        if (record instanceof NumberRecord) {
+            NumberRecord number = (NumberRecord) record;
+            if (dates != null && dates.isDate(number.getXFIndex(), number.getValue())) {
+                set(i, dates.decode(number.getValue()));
+            } else {
+                set(i, NUMBER);
+                numbers[i] = number.getValue();
+            }
+        } else {
+            set(i, toData(record));
+        }
+    }
+
+    private Object toData(Record record) {
+        if (record instanceof LabelSSTRecord)
+            return sst.getString(((LabelSSTRecord) record).getSSTIndex()).getString();
+        if (record instanceof FormulaRecord)
+            return getFormulaData((FormulaRecord) record);
+        if (record instanceof BoolErrRecord) {
+            BoolErrRecord boolErr = (BoolErrRecord) record;
+            return boolErr.isBoolean() ? boolErr.getBooleanValue() : FormulaError.forInt(boolErr.getErrorValue()).getString();
+        }
+        if (record instanceof LabelRecord)
+            return ((LabelRecord) record).getValue();
+        if (record instanceof BlankRecord)
+            return "";
+        return null;
+    }
+
+    private Object getFormulaData(FormulaRecord formula) {
+        if (!cachedFormula) {
+            Ptg[] ptgs = formula.getParsedExpression();
+            // 共享公式只在第一个单元格之后保存一次
+            if (formula.getFormula().getExpReference() != null) {
+                ptgs = getSharedFormulaTokens(formula);
+            }
+            if (ptgs != null) {
+                if (stub == null) {
+                    stub = globals.getStubHSSFWorkbook();
+                }
+                return HSSFFormulaParser.toFormulaString(stub, ptgs);
+            }
+        }
+        switch (formula.getCachedResultTypeEnum()) {
+            case STRING:
+                return getCachedString();
+            case NUMERIC:
+                if (dates != null && dates.isDate(formula.getXFIndex(), formula.getValue()))
+                    return dates.decode(formula.getValue());
+                return formula.getValue();
+            case BOOLEAN:
+                return formula.getCachedBooleanValue();
+            case ERROR:
+                return FormulaError.forInt(formula.getCachedErrorValue()).getString();
+            default:
+                return null;
+        }
+    }
+
+    private Ptg[] getSharedFormulaTokens(FormulaRecord formula) {
+        int row = formula.getRow();
+        int col = formula.getColumn();
+        for (SharedFormulaRecord shared : sharedFormulas) {
+            if (shared.isInRange(row, col)) {
+                return shared.getFormulaTokens(formula);
+            }
+        }
+        // 共享公式的第一个单元格 共享公式记录紧跟在后面
+        Record next = nextRecord();
+        if (next instanceof SharedFormulaRecord) {
+            SharedFormulaRecord shared = (SharedFormulaRecord) next;
+            sharedFormulas.add(shared);
+            if (shared.isInRange(row, col)) {
+                return shared.getFormulaTokens(formula);
+            }
+        } else {
+            pushback = next;
+        }
+        return null;
+    }
+
+    /**
+     * 文本类型的计算结果保存在公式后面的StringRecord中
+     */
+    private String getCachedString() {
+        Record next = nextRecord();
+        while (next instanceof SharedValueRecordBase) {
+            if (next instanceof SharedFormulaRecord) {
+                sharedFormulas.add((SharedFormulaRecord) next);
+            }
+            next = nextRecord();
+        }
+        if (next instanceof StringRecord)
+            return ((StringRecord) next).getString();
+        pushback = next;
+        return "";
+    }
+
+    private void set(int i, Object data) {
+        if (i >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(i + 1, cells.length * 2));
+            numbers = Arrays.copyOf(numbers, cells.length);
+        }
+        cells[i] = data;
+        if (i >= filled) {
+            filled = i + 1;
+        }
+    }
+
+    /**
+     * 跳过前面的表单，停在第index个表单的BOF记录之后
+     */
+    private void seekSheet(int index) {
+        int level = 0;
+        int sheet = -1;
+        Record record;
+        while ((record = records.nextRecord()) != null) {
+            if (record instanceof BOFRecord) {
+                if (level == 0 && ++sheet == index) {
+                    return;
+                }
+                level++;
+            } else if (record instanceof EOFRecord) {
+                level--;
+            }
+        }
+        throw new IllegalArgumentException("Sheet index (" + index + ") is out of range");
+    }
+
+    private static InputStream openWorkbookStream(POIFSFileSystem fs) throws IOException {
+        return fs.createDocumentInputStream(HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot()));
+    }
+
+    /**
+     * 读取全局子流，停在全局子流的EOF记录之后
+     *
+     * @param formats 不为null时收集判断日期格式需要的记录
+     */
+    private static EventWorkbookBuilder.SheetRecordCollectingListener readGlobals(RecordFactoryInputStream records, List<Record> formats) {
+        EventWorkbookBuilder.SheetRecordCollectingListener globals = new EventWorkbookBuilder.SheetRecordCollectingListener(null);
+        Record record;
+        while ((record = records.nextRecord()) != null) {
+            globals.processRecordInternally(record);
+            if (formats != null && (record instanceof ExtendedFormatRecord || record instanceof FormatRecord || record instanceof DateWindow1904Record)) {
+                formats.add(record);
+            }
+            if (record instanceof EOFRecord) {
+                break;
+            }
+        }
+        return globals;
+    }
+
+    private static DateStyleCache newDateStyleCache(DateMode mode, List<Record> records) {
+        List<ExtendedFormatRecord> styles = new ArrayList<>();
+        Map<Integer, String> formats = new HashMap<>();
+        boolean use1904 = false;
+        for (Record record : records) {
+            if (record instanceof ExtendedFormatRecord) {
+                styles.add((ExtendedFormatRecord) record);
+            } else if (record instanceof FormatRecord) {
+                formats.put(((FormatRecord) record).getIndexCode(), ((FormatRecord) record).getFormatString());
+            } else {
+                use1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+            }
+        }
+        return new DateStyleCache(mode, use1904, style -> {
+            if (style >= styles.size())
+                return false;
+            int format = styles.get(style).getFormatIndex();
+            String pattern = formats.containsKey(format) ? formats.get(format) : BuiltinFormats.getBuiltinFormat(format);
+            return DateUtil.isADateFormat(format, pattern);
+        });
+    }
+
+    /**
+     * 合并单元格记录在单元格之后，先扫描一遍。只解析记录头，其余记录不解码，比完整解析一遍快得多。
+     */
+    static List<CellRangeAddress> scanMergedRegions(POIFSFileSystem fs, int index) throws IOException {
+        List<CellRangeAddress> regions = new ArrayList<>();
+        try (InputStream in = openWorkbookStream(fs)) {
+            RecordInputStream rs = new RecordInputStream(in);
+            int level = 0;
+            // 第一个子流是全局子流
+            int sheet = -2;
+            boolean target = false;
+            while (rs.hasNextRecord()) {
+                rs.nextRecord();
+                short sid = rs.getSid();
+                if (sid == FilePassRecord.sid) {
+                    // 加密的文件需要解密后才能读取记录内容
+                    return scanDecryptedMergedRegions(fs, index);
+                }
+                if (sid == BOFRecord.sid) {
+                    if (level == 0) {
+                        target = ++sheet == index;
+                    }
+                    level++;
+                } else if (sid == EOFRecord.sid) {
+                    if (--level == 0 && target) {
+                        break;
+                    }
+                } else if (target && level == 1 && sid == MergeCellsRecord.sid) {
+                    addRegions(regions, new MergeCellsRecord(rs));
+                    continue;
+                }
+                rs.readRemainder();
+            }
+        }
+        return regions;
+    }
+
+    private static List<CellRangeAddress> scanDecryptedMergedRegions(POIFSFileSystem fs, int index) throws IOException {
+        List<CellRangeAddress> regions = new ArrayList<>();
+        try (InputStream in = openWorkbookStream(fs)) {
+            RecordFactoryInputStream records = new RecordFactoryInputStream(in, true);
+            int level = 0;
+            int sheet = -2;
+            boolean target = false;
+            Record record;
+            while ((record = records.nextRecord()) != null) {
+                if (record instanceof BOFRecord) {
+                    if (level == 0) {
+                        target = ++sheet == index;
+                    }
+                    level++;
+                } else if (record instanceof EOFRecord) {
+                    if (--level == 0 && target) {
+                        break;
+                    }
+                } else if (target && level == 1 && record instanceof MergeCellsRecord) {
+                    addRegions(regions, (MergeCellsRecord) record);
+                }
+            }
+        }
+        return regions;
+    }
+
+    private static void addRegions(List<CellRangeAddress> regions, MergeCellsRecord record) {
+        for (int i = 0; i < record.getNumAreas(); i++) {
+            regions.add(record.getAreaAt(i));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.leungkay.keykit.workbook;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * <p>合并单元格区域的扫描线索引，读取时按行号递增查询，每个单元格的查询代价是O(log k)，k是跨过当前行的区域数。</p>
+ * <p>同一行里的合并区域互不重叠，所以按首列排序后取不大于列号的最后一个区域就是唯一可能命中的区域。</p>
+ */
+class MergedRegionIndex {
+    // 按首行排序的全部区域
+    private final CellRangeAddress[] regions;
+    // 跨过当前行的区域 按首列排序
+    private final TreeMap<Integer, CellRangeAddress> active;
+    // 跨过当前行的区域 按末行排序 用来移出已经结束的区域
+    private final PriorityQueue<CellRangeAddress> expiring;
+    private int next;
+    private int currentRow;
+
+    MergedRegionIndex(List<CellRangeAddress> regions) {
+        this.regions = regions.toArray(new CellRangeAddress[0]);
+        Arrays.sort(this.regions, Comparator.comparingInt(CellRangeAddress::getFirstRow));
+        this.active = new TreeMap<>();
+        this.expiring = new PriorityQueue<>(Math.max(1, this.regions.length), Comparator.comparingInt(CellRangeAddress::getLastRow));
+        this.currentRow = -1;
+    }
+
+    /**
+     * @param row 行号，从0开始
+     * @param col 列号，从0开始
+     * @return 单元格所在的合并区域，不在任何区域中返回null
+     */
+    CellRangeAddress find(int row, int col) {
+        if (row != currentRow) {
+            advance(row);
+        }
+        if (active.isEmpty())
+            return null;
+        Map.Entry<Integer, CellRangeAddress> entry = active.floorEntry(col);
+        if (entry == null || entry.getValue().getLastColumn() < col)
+            return null;
+        return entry.getValue();
+    }
+
+    private void advance(int row) {
+        // 往回查询时从头开始扫描
+        if (row < currentRow) {
+            active.clear();
+            expiring.clear();
+            next = 0;
+        }
+        currentRow = row;
+        while (next < regions.length && regions[next].getFirstRow() <= row) {
+            CellRangeAddress region = regions[next++];
+            if (region.getLastRow() >= row) {
+                active.put(region.getFirstColumn(), region);
+                expiring.add(region);
+            }
+        }
+        while (!expiring.isEmpty() && expiring.peek().getLastRow() < row) {
+            CellRangeAddress region = expiring.poll();
+            active.remove(region.getFirstColumn(), region);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * <p>流水线读取：调用方线程解析表单，把每一行的原始单元格放入有界队列，多个转换线程各自用一个行处理器转换，最后按行号重新排序。</p>
+ * <p>解析线程在途的行数有上限，转换慢的时候解析线程会等待，已转换但还没轮到的行也不会无限堆积。</p>
+ * <p>转换线程在限定时间内没有全部启动时（比如线程池已满，或者调用方本身就在同一个线程池中）直接失败，不会一直等待。</p>
+ */
+class PipelinedReader<T> {
+    // 转换线程启动的等待时间
+    static final long START_TIMEOUT_MILLIS = 10_000L;
+    private static final RawRow END = new RawRow(-1, null, null);
+    // 数字存放在numbers中 cells中放NUMBER
+    private static final Object NUMBER = new Object();
+    private final SheetCursor cursor;
+    private final int startX;
+    private final int width;
+    private final int workers;
+    private final BlockingQueue<RawRow> queue;
+    // 在途的行数上限 行被按顺序取走后归还
+    private final Semaphore inFlight;
+    private final Map<Long, T> completed;
+    private final List<T> lines;
+    private final AtomicReference<Throwable> error;
+    // 保护started running admitting
+    private final Object workerLock;
+    private int started;
+    private int running;
+    private boolean admitting;
+    private long next;
+
+    private PipelinedReader(SheetCursor cursor, int startX, int width, int workers) {
+        this.cursor = cursor;
+        this.startX = startX;
+        this.width = width;
+        this.workers = workers;
+        this.queue = new ArrayBlockingQueue<>(workers * 64);
+        this.inFlight = new Semaphore(workers * 128);
+        this.completed = new HashMap<>();
+        this.lines = new ArrayList<>();
+        this.error = new AtomicReference<>();
+        this.workerLock = new Object();
+        this.admitting = true;
+    }
+
+    /**
+     * @param executor 转换线程使用的线程池，为null时创建专用线程
+     */
+    static <T> List<T> read(SheetCursor cursor, int startX, int width, Supplier<RowProcessor<T>> processors, int workers, ExecutorService executor) {
+        return read(cursor, startX, width, processors, workers, executor, START_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param executor     转换线程使用的线程池，为null时创建专用线程
+     * @param startTimeout 等待转换线程全部启动的毫秒数
+     */
+    @SneakyThrows
+    static <T> List<T> read(SheetCursor cursor, int startX, int width, Supplier<RowProcessor<T>> processors, int workers,
+                            ExecutorService executor, long startTimeout) {
+        PipelinedReader<T> reader = new PipelinedReader<>(cursor, startX, width, workers);
+        for (int i = 0; i < workers; i++) {
+            Runnable worker = () -> {
+                // 已经放弃等待的转换线程晚启动时直接退出
+                if (!reader.enter())
+                    return;
+                try {
+                    reader.convert(processors.get());
+                } catch (Throwable e) {
+                    reader.fail(e);
+                } finally {
+                    reader.exit();
+                }
+            };
+            if (executor != null) {
+                executor.execute(worker);
+            } else {
+                Thread thread = new Thread(worker, "keykit-pipeline-worker-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        try {
+            if (reader.awaitStart(startTimeout)) {
+                reader.parse();
+            } else {
+                reader.fail(new IllegalStateException("pipeline workers did not start within " + startTimeout
+                        + "ms, the executor needs " + workers + " idle threads"));
+            }
+        } finally {
+            if (reader.error.get() != null) {
+                // 出错后剩下的行不再转换
+                reader.queue.clear();
+            }
+            // 转换线程出错时会清空队列 这里不会一直等待
+            reader.queue.put(END);
+            reader.awaitExit();
+        }
+        if (reader.error.get() != null)
+            throw reader.error.get();
+        return reader.lines;
+    }
+
+    private void parse() throws InterruptedException {
+        MergedRegionIndex regions = new MergedRegionIndex(cursor.getMergedRegions());
+        RawRowProcessor raw = new RawRowProcessor(width);
+        while (cursor.next()) {
+            // 转换线程出错时会归还许可并清空队列 解析线程醒来后停止
+            inFlight.acquire();
+            if (error.get() != null)
+                return;
+            queue.put(WorkbookKit.readRow(cursor, regions, startX, raw, width));
+            if (error.get() != null)
+                return;
+        }
+    }
+
+    private void convert(RowProcessor<T> processor) throws InterruptedException {
+        while (true) {
+            RawRow row = queue.take();
+            if (row == END) {
+                // 结束标记留给其他转换线程
+                queue.put(END);
+                return;
+            }
+            for (int i = 0; i < row.cells.length; i++) {
+                row.push(i, processor);
+            }
+            complete(row.seq, processor.pull());
+        }
+    }
+
+    /**
+     * 记录第一个错误，唤醒等待许可或者队列空位的解析线程
+     */
+    private void fail(Throwable e) {
+        if (error.compareAndSet(null, e)) {
+            queue.clear();
+            inFlight.release(workers * 128);
+        }
+    }
+
+    private boolean enter() {
+        synchronized (workerLock) {
+            if (!admitting)
+                return false;
+            started++;
+            running++;
+            workerLock.notifyAll();
+            return true;
+        }
+    }
+
+    private void exit() {
+        synchronized (workerLock) {
+            running--;
+            workerLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return 转换线程是否全部启动，超时后不再接受晚启动的转换线程
+     */
+    private boolean awaitStart(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (workerLock) {
+            try {
+                long remaining;
+                while (started < workers && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(workerLock, remaining);
+                }
+                return started == workers;
+            } finally {
+                admitting = false;
+            }
+        }
+    }
+
+    /**
+     * 等待已经启动的转换线程全部退出
+     */
+    private void awaitExit() throws InterruptedException {
+        synchronized (workerLock) {
+            while (running > 0) {
+                workerLock.wait();
+            }
+        }
+    }
+
+    private synchronized void complete(long seq, T line) {
+        completed.put(seq, line);
+        // 按行号顺序取走已经转换好的行
+        while (completed.containsKey(next)) {
+            lines.add(completed.remove(next));
+            next++;
+            inFlight.release();
+        }
+    }
+
+    private static class RawRow {
+        private final long seq;
+        private final Object[] cells;
+        private final double[] numbers;
+
+        RawRow(long seq, Object[] cells, double[] numbers) {
+            this.seq = seq;
+            this.cells = cells;
+            this.numbers = numbers;
+        }
+
+        /**
+         * 和解析时一样按类型推入processor，数字和布尔值不装箱
+         */
+        void push(int i, RowProcessor<?> processor) {
+            Object data = cells[i];
+            if (data == null) {
+                processor.pushNull(i);
+            } else if (data == NUMBER) {
+                processor.pushDouble(i, numbers[i]);
+            } else if (data instanceof Boolean) {
+                processor.pushBoolean(i, (Boolean) data);
+            } else if (data instanceof String) {
+                processor.pushString(i, (String) data);
+            } else {
+                processor.push(i, data);
+            }
+        }
+    }
+
+    /**
+     * 把一行的单元格原样放进数组，数字不装箱
+     */
+    private static class RawRowProcessor implements RowProcessor<RawRow> {
+        private final int width;
+        private long seq;
+        private Object[] cells;
+        private double[] numbers;
+
+        RawRowProcessor(int width) {
+            this.width = width;
+            this.cells = new Object[width];
+            this.numbers = new double[width];
+        }
+
+        @Override
+        public void push(int index, Object data) {
+            cells[index] = data;
+        }
+
+        @Override
+        public void pushDouble(int index, double data) {
+            cells[index] = NUMBER;
+            numbers[index] = data;
+        }
+
+        @Override
+        public void pushBoolean(int index, boolean data) {
+            cells[index] = data;
+        }
+
+        @Override
+        public void pushNull(int index) {
+            cells[index] = null;
+        }
+
+        @Override
+        public RawRow pull() {
+            RawRow row = new RawRow(seq++, cells, numbers);
+            cells = new Object[width];
+            numbers = new double[width];
+            return row;
+        }
+    }
+}
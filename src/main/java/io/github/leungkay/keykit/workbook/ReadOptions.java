@@ -0,0 +1,53 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 游标解析时需要的读取参数
+ */
+@Data
+@Accessors(chain = true)
+class ReadOptions {
+    // 第几列开始读取，从0开始
+    protected int startX;
+    // 第几行开始读取，从0开始
+    protected int startY;
+    // 读取多少列，负数表示不限制
+    protected int width = -1;
+    // 读取到第几行（包含），负数表示不限制
+    protected int endRow = -1;
+    // 最多读取多少行，负数表示不限制
+    protected int limit = -1;
+    // 是否处理合并单元格
+    protected boolean merged = true;
+    protected FormulaMode formulaMode = FormulaMode.FORMULA;
+    protected DateMode dateMode = DateMode.RAW;
+
+    /**
+     * @return 读取的最后一行（包含），同时考虑endRow和limit
+     */
+    int getLastRow() {
+        long last = Integer.MAX_VALUE;
+        if (endRow >= 0)
+            last = endRow;
+        if (limit >= 0)
+            last = Math.min(last, (long) startY + limit - 1);
+        return (int) last;
+    }
+
+    /**
+     * @return 列数已经确定的一份副本，同一个reader多次读取互不影响
+     */
+    ReadOptions window(int width) {
+        return new ReadOptions()
+                .setStartX(startX)
+                .setStartY(startY)
+                .setWidth(width)
+                .setEndRow(endRow)
+                .setLimit(limit)
+                .setMerged(merged)
+                .setFormulaMode(formulaMode)
+                .setDateMode(dateMode);
+    }
+}
@@ -1,9 +1,7 @@
 package io.github.leungkay.keykit.workbook;
 
 import lombok.NonNull;
-import lombok.SneakyThrows;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
@@ -11,40 +9,57 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 public class Row2BeanProcessor<T> implements RowProcessor<T> {
+    /**
+     * @deprecated 赋值通过{@link #binding}完成，只为兼容子类保留
+     */
+    @Deprecated
     protected Class<T> clazz;
     protected T line;
+    /**
+     * @deprecated 赋值通过{@link #binding}完成，只为兼容子类保留
+     */
+    @Deprecated
     protected Map<String, List<Method>> beanMethods;
+    /**
+     * @deprecated 赋值通过{@link #binding}完成，只为兼容子类保留
+     */
+    @Deprecated
     protected String[] fields;
+    protected BeanBinding<T> binding;
 
-    @SneakyThrows
     public Row2BeanProcessor(@NonNull Class<T> clazz, String... fields) {
         this.clazz = clazz;
-        this.line = clazz.newInstance();
         this.beanMethods = Arrays.stream(clazz.getMethods()).collect(Collectors.groupingBy(Method::getName, Collectors.toList()));
         this.fields = fields;
+        // 同一个类和字段的绑定计划只生成一次
+        this.binding = BeanBinding.of(clazz, fields);
+        this.line = binding.newInstance();
     }
 
     @Override
     public void push(int index, Object data) {
-        String setterName = "set" + fields[index].toUpperCase().charAt(0) + fields[index].substring(1);
-        List<Method> methods = beanMethods.get(setterName);
-        methods.stream()
-                .filter(method -> method.getParameterCount() == 1 && method.getParameterTypes()[0].isAssignableFrom(data.getClass()))
-                .findFirst()
-                .ifPresent(method-> {
-                    try {
-                        method.invoke(this.line, data);
-                    } catch (IllegalAccessException | InvocationTargetException e) {
-                        // 调用失败不处理
-                    }
-                });
+        binding.set(line, index, data);
+    }
+
+    @Override
+    public void pushDouble(int index, double data) {
+        binding.setDouble(line, index, data);
+    }
+
+    @Override
+    public void pushBoolean(int index, boolean data) {
+        binding.setBoolean(line, index, data);
+    }
+
+    @Override
+    public void pushNull(int index) {
+        // 空值不处理
     }
 
-    @SneakyThrows
     @Override
     public T pull() {
         T result = line;
-        line = clazz.newInstance();
+        line = binding.newInstance();
         return result;
     }
 }
@@ -0,0 +1,46 @@
+package io.github.leungkay.keykit.workbook;
+
+/**
+ * 把每一行的数据追加到对应的列中，不生成行对象，读取结束后调用{@link #toFrame()}取得结果。
+ */
+public class Row2ColumnProcessor implements RowProcessor<Void> {
+    protected String[] fields;
+    protected ColumnVector[] columns;
+    protected int rowCount;
+
+    public Row2ColumnProcessor(String... fields) {
+        this.fields = fields;
+        this.columns = new ColumnVector[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            this.columns[i] = new ColumnVector(fields[i]);
+        }
+    }
+
+    @Override
+    public void push(int index, Object data) {
+        columns[index].append(data);
+    }
+
+    @Override
+    public void pushDouble(int index, double data) {
+        columns[index].append(data);
+    }
+
+    @Override
+    public void pushBoolean(int index, boolean data) {
+        columns[index].append(data);
+    }
+
+    @Override
+    public Void pull() {
+        rowCount++;
+        return null;
+    }
+
+    public ColumnFrame toFrame() {
+        for (ColumnVector column : columns) {
+            column.trim();
+        }
+        return new ColumnFrame(fields, columns, rowCount);
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.leungkay.keykit.workbook;
+
+/**
+ * <p>每一行都返回同一个{@link RowView}，读取过程中不为每一行创建对象，适合只做统计、不保留每一行的场景。</p>
+ * <p>只能配合逐行处理的{@link WorkbookReader#forEach}、{@link WorkbookReader#iterate}和{@link WorkbookReader#stream}使用，
+ * 不能用在返回所有行的{@link WorkbookReader#read}和分批读取中。</p>
+ */
+public class Row2ViewProcessor implements RowProcessor<RowView> {
+    private final RowView view;
+
+    /**
+     * @param fields 每一列对应的字段名，列数和字段数相同
+     */
+    public Row2ViewProcessor(String... fields) {
+        this.view = new RowView(fields);
+    }
+
+    @Override
+    public void push(int index, Object data) {
+        view.values[index] = data;
+    }
+
+    @Override
+    public void pushDouble(int index, double data) {
+        view.setDouble(index, data);
+    }
+
+    @Override
+    public RowView pull() {
+        return view;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.leungkay.keykit.workbook;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>逐行读取的迭代器，每次调用{@link #next()}才解析一行，同时存活的行数和文件行数无关。</p>
+ * <p>迭代结束后自动关闭文件，提前结束迭代时必须调用{@link #close()}。</p>
+ */
+public class RowIterator<T> implements Iterator<T>, Closeable {
+    private final SheetCursor cursor;
+    private final MergedRegionIndex regions;
+    private final int startX;
+    private final RowProcessor<T> processor;
+    private final int width;
+    // 游标是否已经移动到下一行
+    private boolean fetched;
+    private boolean hasNext;
+    private boolean closed;
+
+    RowIterator(SheetCursor cursor, int startX, RowProcessor<T> processor, int width) {
+        this.cursor = cursor;
+        this.regions = new MergedRegionIndex(cursor.getMergedRegions());
+        this.startX = startX;
+        this.processor = processor;
+        this.width = width;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fetched && !closed) {
+            fetched = true;
+            hasNext = cursor.next();
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext && !closed;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        fetched = false;
+        return WorkbookKit.readRow(cursor, regions, startX, processor, width);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cursor.close();
+        }
+    }
+}
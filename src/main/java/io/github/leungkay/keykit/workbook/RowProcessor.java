@@ -4,4 +4,32 @@ public interface RowProcessor<T> {
     void push(int index, Object data);
 
     T pull();
+
+    /**
+     * 数字单元格，默认装箱后调用{@link #push(int, Object)}，需要避免装箱的处理器可以重写
+     */
+    default void pushDouble(int index, double data) {
+        push(index, data);
+    }
+
+    /**
+     * 布尔单元格
+     */
+    default void pushBoolean(int index, boolean data) {
+        push(index, data);
+    }
+
+    /**
+     * 文本、空白和错误单元格，以及公式
+     */
+    default void pushString(int index, String data) {
+        push(index, data);
+    }
+
+    /**
+     * 没有单元格或者合并区域中非首个单元格
+     */
+    default void pushNull(int index) {
+        push(index, null);
+    }
 }
@@ -0,0 +1,109 @@
+package io.github.leungkay.keykit.workbook;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>固定列数的一行数据，可以按列序号或字段名取值，由{@link Row2ViewProcessor}复用同一个对象返回每一行。</p>
+ * <p>内容只在读取下一行之前有效，需要保留的数据要自己复制出来，比如调用{@link #toList()}。</p>
+ * <p>字段名在创建时就转换成了列序号，循环中推荐先用{@link #indexOf(String)}取得序号再按序号取值。</p>
+ */
+public class RowView {
+    // 数字存放在numbers中 values中放NUMBER
+    private static final Object NUMBER = new Object();
+    private final String[] fields;
+    private final Map<String, Integer> indexes;
+    final Object[] values;
+    final double[] numbers;
+
+    RowView(String... fields) {
+        this.fields = fields;
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                indexes.putIfAbsent(fields[i], i);
+            }
+        }
+        this.values = new Object[fields.length];
+        this.numbers = new double[fields.length];
+    }
+
+    void setDouble(int index, double value) {
+        values[index] = NUMBER;
+        numbers[index] = value;
+    }
+
+    /**
+     * @param field 字段名
+     * @return 列序号，从0开始，没有这个字段时返回-1
+     */
+    public int indexOf(String field) {
+        Integer index = indexes.get(field);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index 列序号，从0开始
+     * @return 单元格的值，空单元格和合并区域中非首个单元格返回null
+     */
+    public Object get(int index) {
+        return values[index] == NUMBER ? (Object) numbers[index] : values[index];
+    }
+
+    /**
+     * @param field 字段名
+     * @return 单元格的值
+     */
+    public Object get(String field) {
+        int index = indexOf(field);
+        if (index < 0) throw new IllegalArgumentException("unknown field: " + field);
+        return get(index);
+    }
+
+    /**
+     * @param index 列序号，从0开始
+     * @return 数字单元格的值，不是数字时返回{@link Double#NaN}
+     */
+    public double getDouble(int index) {
+        Object value = values[index];
+        if (value == NUMBER)
+            return numbers[index];
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * @param index 列序号，从0开始
+     * @return 单元格的值转换成字符串，null仍然返回null
+     */
+    public String getString(int index) {
+        Object value = get(index);
+        return value == null ? null : value.toString();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public List<String> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * @return 当前行的一份副本
+     */
+    public List<Object> toList() {
+        Object[] copy = new Object[values.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = get(i);
+        }
+        return Arrays.asList(copy);
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+}
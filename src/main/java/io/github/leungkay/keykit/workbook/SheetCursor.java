@@ -0,0 +1,58 @@
+package io.github.leungkay.keykit.workbook;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * 按行向前移动的表单游标，屏蔽DOM读取和流式读取的差异。
+ * 游标从构造时指定的起始行开始，中间缺失的行视为空行，直到表单的最后一行。
+ */
+interface SheetCursor extends Closeable {
+    /**
+     * @return 移动到下一行，没有更多行时返回false
+     */
+    boolean next();
+
+    /**
+     * @return 当前行的行号，从0开始
+     */
+    int getRowNum();
+
+    /**
+     * @param x 列号，从0开始
+     * @return 当前行指定列的值，单元格不存在时返回null
+     */
+    Object getData(int x);
+
+    /**
+     * 把当前行指定列的值按类型推入processor，能区分类型的游标重写后数字和布尔值不装箱
+     *
+     * @param x         列号，从0开始
+     * @param processor 行处理器
+     * @param index     推入processor的序号
+     */
+    default void pushData(int x, RowProcessor<?> processor, int index) {
+        Object data = getData(x);
+        if (data == null) {
+            processor.pushNull(index);
+        } else if (data instanceof Double) {
+            processor.pushDouble(index, (Double) data);
+        } else if (data instanceof Boolean) {
+            processor.pushBoolean(index, (Boolean) data);
+        } else if (data instanceof String) {
+            processor.pushString(index, (String) data);
+        } else {
+            processor.push(index, data);
+        }
+    }
+
+    /**
+     * @return 表单中的合并单元格区域
+     */
+    List<CellRangeAddress> getMergedRegions();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,356 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.model.SharedStrings;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>用StAX逐行解析表单XML的游标，内存中只保留当前行的单元格，占用的内存和表单行数无关。</p>
+ * <p>返回值和{@link UserModelSheetCursor}保持一致，唯一的区别是共享公式中非首个单元格的XML里没有公式内容，此时返回公式的缓存结果。</p>
+ * <p>{@link FormulaMode#CACHED}直接使用XML中保存的计算结果，不需要额外的解析。</p>
+ * <p>读取窗口之外的单元格只跳过标签，不解码文本和数字；读到最后一行之后不再继续解析。</p>
+ */
+class StreamingSheetCursor implements SheetCursor {
+    private static final Object NUMBER = new Object();
+    private final SharedStrings sharedStrings;
+    private final InputStream stream;
+    private final XMLStreamReader reader;
+    private final List<CellRangeAddress> regions;
+    private final Closeable owner;
+    private final boolean cachedFormula;
+    // 不转换日期时为null
+    private final DateStyleCache dates;
+    // 读取窗口 [startX, endX) 列和最后一行
+    private final int startX;
+    private final int endX;
+    private final int lastRow;
+    // 当前行窗口内的单元格 按列号减startX存放 数字存放在numbers中 cells中放NUMBER
+    private Object[] cells;
+    private double[] numbers;
+    // 当前行已填充的宽度
+    private int filled;
+    private int rowNum;
+    // 已经读到开始标签但还没有处理的物理行
+    private int pendingRow;
+    private boolean pending;
+    private boolean exhausted;
+
+    @SneakyThrows
+    StreamingSheetCursor(SharedStrings sharedStrings, PackagePart part, ReadOptions options, DateStyleCache dates, Closeable owner) {
+        this.sharedStrings = sharedStrings;
+        this.dates = dates;
+        this.owner = owner;
+        this.cachedFormula = options.getFormulaMode() == FormulaMode.CACHED;
+        this.startX = options.getStartX();
+        this.endX = options.getWidth() < 0 ? Integer.MAX_VALUE : startX + options.getWidth();
+        this.lastRow = options.getLastRow();
+        // 合并单元格区域写在sheetData之后 先扫描一遍
+        if (options.isMerged()) {
+            try (InputStream in = part.getInputStream()) {
+                this.regions = scanMergedRegions(in);
+            }
+        } else {
+            this.regions = Collections.emptyList();
+        }
+        this.stream = part.getInputStream();
+        try {
+            this.reader = XMLHelper.newXMLInputFactory().createXMLStreamReader(stream);
+        } catch (Throwable e) {
+            stream.close();
+            throw e;
+        }
+        this.cells = new Object[options.getWidth() > 0 ? options.getWidth() : 16];
+        this.numbers = new double[cells.length];
+        this.rowNum = options.getStartY() - 1;
+        this.pendingRow = -1;
+    }
+
+    @SneakyThrows
+    @Override
+    public boolean next() {
+        Arrays.fill(cells, 0, filled, null);
+        filled = 0;
+        // 读够了就不再解析
+        if (rowNum >= lastRow) {
+            return false;
+        }
+        rowNum++;
+        while (true) {
+            if (!pending && !advanceToRow()) {
+                return false;
+            }
+            // 文件中没有这一行 作为空行返回
+            if (pendingRow > rowNum) {
+                return true;
+            }
+            pending = false;
+            if (pendingRow == rowNum) {
+                readRow();
+                return true;
+            }
+            // 起始行之前的行直接跳过
+            skipElement();
+        }
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public Object getData(int x) {
+        int i = x - startX;
+        if (i < 0 || i >= filled)
+            return null;
+        return cells[i] == NUMBER ? (Object) numbers[i] : cells[i];
+    }
+
+    @Override
+    public void pushData(int x, RowProcessor<?> processor, int index) {
+        int i = x - startX;
+        Object data = i >= 0 && i < filled ? cells[i] : null;
+        if (data == NUMBER) {
+            processor.pushDouble(index, numbers[i]);
+        } else {
+            SheetCursor.super.pushData(x, processor, index);
+        }
+    }
+
+    @Override
+    public List<CellRangeAddress> getMergedRegions() {
+        return regions;
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        try {
+            reader.close();
+            stream.close();
+        } finally {
+            if (owner != null) {
+                owner.close();
+            }
+        }
+    }
+
+    private boolean advanceToRow() throws XMLStreamException {
+        if (exhausted) {
+            return false;
+        }
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "row".equals(reader.getLocalName())) {
+                String r = reader.getAttributeValue(null, "r");
+                // r属性可以省略 省略时是上一行的下一行
+                pendingRow = r == null ? pendingRow + 1 : Integer.parseInt(r) - 1;
+                pending = true;
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT && "sheetData".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        exhausted = true;
+        return false;
+    }
+
+    private void readRow() throws XMLStreamException {
+        int col = -1;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("c".equals(reader.getLocalName())) {
+                    String ref = reader.getAttributeValue(null, "r");
+                    col = ref == null ? col + 1 : columnIndex(ref);
+                    if (col >= startX && col < endX) {
+                        readCell(col);
+                    } else {
+                        skipElement();
+                    }
+                } else {
+                    skipElement();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+        }
+    }
+
+    private void readCell(int col) throws XMLStreamException {
+        String type = reader.getAttributeValue(null, "t");
+        String style = reader.getAttributeValue(null, "s");
+        String value = null;
+        String formula = null;
+        String inline = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "v":
+                        value = reader.getElementText();
+                        break;
+                    case "f":
+                        formula = reader.getElementText();
+                        break;
+                    case "is":
+                        inline = readInlineString();
+                        break;
+                    default:
+                        skipElement();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        int i = col - startX;
+        // 数字不装箱
+        if ((cachedFormula || formula == null || formula.isEmpty()) && (type == null || "n".equals(type))
+                && value != null && !value.isEmpty()) {
+            double number = Double.parseDouble(value);
+            // 没有s属性时使用默认样式
+            if (dates != null && dates.isDate(style == null ? 0 : Integer.parseInt(style), number)) {
+                set(i, dates.decode(number));
+            } else {
+                set(i, NUMBER);
+                numbers[i] = number;
+            }
+        } else {
+            set(i, toData(type, value, formula, inline));
+        }
+    }
+
+    private String readInlineString() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("t".equals(name)) {
+                    text.append(reader.getElementText());
+                } else if ("rPh".equals(name) || "rPr".equals(name)) {
+                    // 拼音和富文本格式不是内容
+                    skipElement();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "is".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    private Object toData(String type, String value, String formula, String inline) {
+        // 和用户模型一样 公式单元格返回公式
+        if (!cachedFormula && formula != null && !formula.isEmpty())
+            return formula;
+        if (type == null)
+            type = "n";
+        switch (type) {
+            case "s":
+                return value == null ? "" : sharedString(Integer.parseInt(value));
+            case "inlineStr":
+                return inline == null ? (value == null ? "" : value) : inline;
+            case "b":
+                return value == null ? "" : "1".equals(value) || "true".equals(value);
+            case "n":
+                return value == null || value.isEmpty() ? "" : Double.parseDouble(value);
+            default:
+                // str e d 都按文本返回
+                return value == null ? "" : value;
+        }
+    }
+
+    private String sharedString(int index) {
+        // 文件缓存的实现直接取字符串 不用包装成富文本
+        if (sharedStrings instanceof FileBackedSharedStrings)
+            return ((FileBackedSharedStrings) sharedStrings).getString(index);
+        return sharedStrings.getItemAt(index).getString();
+    }
+
+    private void set(int i, Object data) {
+        if (i >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(i + 1, cells.length * 2));
+            numbers = Arrays.copyOf(numbers, cells.length);
+        }
+        cells[i] = data;
+        if (i >= filled) {
+            filled = i + 1;
+        }
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @param ref 单元格引用，比如AB12
+     * @return 列号，从0开始
+     */
+    static int columnIndex(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                col = col * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                col = col * 26 + (c - 'a' + 1);
+            } else {
+                break;
+            }
+        }
+        return col - 1;
+    }
+
+    /**
+     * 用StAX扫描表单XML中mergeCells下的mergeCell，注释、CDATA和属性的写法都按XML规则处理。
+     * 合并区域写在sheetData之后，sheetData中的内容只跳过不解码。
+     */
+    static List<CellRangeAddress> scanMergedRegions(InputStream in) throws XMLStreamException {
+        List<CellRangeAddress> regions = new ArrayList<>();
+        XMLStreamReader reader = XMLHelper.newXMLInputFactory().createXMLStreamReader(in);
+        try {
+            boolean inMergeCells = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("mergeCells".equals(name)) {
+                        inMergeCells = true;
+                    } else if (inMergeCells && "mergeCell".equals(name)) {
+                        String ref = reader.getAttributeValue(null, "ref");
+                        if (ref != null) {
+                            regions.add(CellRangeAddress.valueOf(ref));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "mergeCells".equals(reader.getLocalName())) {
+                    // 一个表单只有一个mergeCells 后面的内容不用再解析
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return regions;
+    }
+}
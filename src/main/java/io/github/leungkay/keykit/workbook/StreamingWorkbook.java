@@ -0,0 +1,104 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbookPr;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用XSSFReader只读打开的xlsx文件，不解析表单内容，表单通过{@link StreamingSheetCursor}逐行读取。
+ */
+class StreamingWorkbook implements Closeable {
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final SharedStrings sharedStrings;
+    private final List<PackagePart> sheetParts;
+    // 转换日期时才读取样式表
+    private StylesTable styles;
+    private boolean date1904;
+
+    /**
+     * @param filePath           待读取的文件路径
+     * @param sharedStringsCache 大于0时共享字符串表存放到临时文件，内存中只缓存这么多个字符串
+     */
+    @SneakyThrows
+    StreamingWorkbook(String filePath, int sharedStringsCache) {
+        this.pkg = OPCPackage.open(filePath, PackageAccess.READ);
+        try {
+            this.reader = new XSSFReader(pkg);
+            this.sheetParts = new ArrayList<>();
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                try (InputStream ignored = it.next()) {
+                    this.sheetParts.add(it.getSheetPart());
+                }
+            }
+            // 不读取拼音 和用户模型的取值保持一致
+            this.sharedStrings = sharedStringsCache > 0
+                    ? new FileBackedSharedStrings(pkg, sharedStringsCache)
+                    : new ReadOnlySharedStringsTable(pkg, false);
+        } catch (Exception e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    int getSheetCount() {
+        return sheetParts.size();
+    }
+
+    /**
+     * @param index  表单序号，从0开始
+     * @param options 读取参数
+     * @param owner  游标关闭时一起关闭的资源，可以为null
+     */
+    SheetCursor openSheet(int index, ReadOptions options, Closeable owner) {
+        DateStyleCache dates = null;
+        if (options.getDateMode() != DateMode.RAW) {
+            StylesTable styles = getStyles();
+            // 每个游标一个缓存 样式表只读 可以共用
+            dates = new DateStyleCache(options.getDateMode(), date1904, style -> {
+                XSSFCellStyle cellStyle = styles.getStyleAt(style);
+                return cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+            });
+        }
+        return new StreamingSheetCursor(sharedStrings, sheetParts.get(index), options, dates, owner);
+    }
+
+    @SneakyThrows
+    private synchronized StylesTable getStyles() {
+        if (styles == null) {
+            try (InputStream in = reader.getWorkbookData()) {
+                CTWorkbookPr workbookPr = WorkbookDocument.Factory.parse(in).getWorkbook().getWorkbookPr();
+                date1904 = workbookPr != null && workbookPr.getDate1904();
+            }
+            styles = reader.getStylesTable();
+        }
+        return styles;
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        try {
+            if (sharedStrings instanceof Closeable) {
+                ((Closeable) sharedStrings).close();
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.leungkay.keykit.workbook;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>按样式的属性（格式、字体、填充、对齐、边框等）缓存一个工作簿中的样式，属性相同的单元格共用一个样式。</p>
+ * <p>工作簿中已有的样式也会被复用，避免逐个单元格创建样式导致超过Excel 64000个样式的上限。</p>
+ * <p>线程安全，多个表单并行导出时共用。和写入XSSF单元格一样以工作簿为锁，样式表只被一个锁保护。</p>
+ */
+class StyleCache {
+    private final Workbook workbook;
+    private final DataFormat dataFormat;
+    private final Map<List<Object>, CellStyle> styles;
+
+    StyleCache(Workbook workbook) {
+        this.workbook = workbook;
+        this.dataFormat = workbook.createDataFormat();
+        this.styles = new HashMap<>();
+        for (int i = 0; i < workbook.getNumCellStyles(); i++) {
+            CellStyle style = workbook.getCellStyleAt(i);
+            styles.putIfAbsent(keyOf(style, style.getDataFormatString()), style);
+        }
+    }
+
+    /**
+     * @param base   基础样式，为null时使用工作簿的默认样式
+     * @param format 数据格式，比如 yyyy-mm-dd
+     * @return 除了数据格式以外和基础样式相同的样式
+     */
+    CellStyle get(CellStyle base, String format) {
+        synchronized (workbook) {
+            CellStyle source = base != null ? base : workbook.getCellStyleAt(0);
+            return styles.computeIfAbsent(keyOf(source, format), key -> {
+                CellStyle style = workbook.createCellStyle();
+                style.cloneStyleFrom(source);
+                style.setDataFormat(dataFormat.getFormat(format));
+                return style;
+            });
+        }
+    }
+
+    private static List<Object> keyOf(CellStyle style, String format) {
+        return Arrays.asList(format, style.getFontIndex(),
+                style.getFillPattern(), style.getFillForegroundColorColor(), style.getFillBackgroundColorColor(),
+                style.getAlignment(), style.getVerticalAlignment(), style.getWrapText(), style.getShrinkToFit(),
+                style.getRotation(), style.getIndention(), style.getLocked(), style.getHidden(), style.getQuotePrefixed(),
+                style.getBorderTop(), style.getBorderBottom(), style.getBorderLeft(), style.getBorderRight(),
+                style.getTopBorderColor(), style.getBottomBorderColor(), style.getLeftBorderColor(), style.getRightBorderColor());
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.SneakyThrows;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.Date1904Support;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于POI用户模型（整个文件解析到内存）的游标，支持xlsx和xls文件。
+ */
+class UserModelSheetCursor implements SheetCursor {
+    private final Closeable resource;
+    private final Sheet sheet;
+    private final int lastRowNum;
+    private final boolean merged;
+    private final FormulaMode formulaMode;
+    // 整个读取过程共用一个计算器 计算过的单元格不会重复计算
+    private final FormulaEvaluator evaluator;
+    // 不转换日期时为null
+    private final DateStyleCache dates;
+    private int rowNum;
+    private Row row;
+
+    @SneakyThrows
+    UserModelSheetCursor(String filePath, int index, ReadOptions options) {
+        // 只读打开 关闭时不会回写文件
+        Workbook workbook;
+        if (WorkbookKit.isLegacy(filePath)) {
+            workbook = new HSSFWorkbook(new POIFSFileSystem(new File(filePath), true));
+            this.resource = workbook;
+        } else {
+            OPCPackage pkg = OPCPackage.open(filePath, PackageAccess.READ);
+            try {
+                workbook = new XSSFWorkbook(pkg);
+            } catch (Exception e) {
+                pkg.revert();
+                throw e;
+            }
+            this.resource = pkg::revert;
+        }
+        try {
+            this.sheet = workbook.getSheetAt(index);
+        } catch (Exception e) {
+            resource.close();
+            throw e;
+        }
+        this.lastRowNum = Math.min(sheet.getLastRowNum(), options.getLastRow());
+        this.merged = options.isMerged();
+        this.rowNum = options.getStartY() - 1;
+        this.formulaMode = options.getFormulaMode();
+        this.evaluator = formulaMode == FormulaMode.EVALUATED ? workbook.getCreationHelper().createFormulaEvaluator() : null;
+        this.dates = options.getDateMode() == DateMode.RAW ? null : new DateStyleCache(options.getDateMode(), isDate1904(workbook), style -> {
+            CellStyle cellStyle = workbook.getCellStyleAt(style);
+            return DateUtil.isADateFormat(cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+        });
+    }
+
+    @Override
+    public boolean next() {
+        if (rowNum >= lastRowNum) {
+            row = null;
+            return false;
+        }
+        row = sheet.getRow(++rowNum);
+        return true;
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public Object getData(int x) {
+        if (row == null)
+            return null;
+        Cell cell = row.getCell(x);
+        if (cell == null)
+            return null;
+        switch (cell.getCellType()) {
+            case BLANK:
+            case STRING:
+                return cell.getStringCellValue();
+            case NUMERIC:
+                return getNumericData(cell, cell.getNumericCellValue());
+            case FORMULA:
+                return getFormulaData(cell);
+            case BOOLEAN:
+                return cell.getBooleanCellValue();
+            case ERROR:
+                return getErrorData(cell);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public void pushData(int x, RowProcessor<?> processor, int index) {
+        Cell cell = row == null ? null : row.getCell(x);
+        if (cell == null) {
+            processor.pushNull(index);
+            return;
+        }
+        // 数字和布尔值不装箱
+        switch (cell.getCellType()) {
+            case NUMERIC:
+                double value = cell.getNumericCellValue();
+                if (isDate(cell, value)) {
+                    processor.push(index, dates.decode(value));
+                } else {
+                    processor.pushDouble(index, value);
+                }
+                break;
+            case BOOLEAN:
+                processor.pushBoolean(index, cell.getBooleanCellValue());
+                break;
+            case BLANK:
+            case STRING:
+                processor.pushString(index, cell.getStringCellValue());
+                break;
+            default:
+                SheetCursor.super.pushData(x, processor, index);
+        }
+    }
+
+    private Object getNumericData(Cell cell, double value) {
+        return isDate(cell, value) ? dates.decode(value) : value;
+    }
+
+    private boolean isDate(Cell cell, double value) {
+        return dates != null && dates.isDate(cell.getCellStyle().getIndex() & 0xFFFF, value);
+    }
+
+    private static boolean isDate1904(Workbook workbook) {
+        if (workbook instanceof Date1904Support)
+            return ((Date1904Support) workbook).isDate1904();
+        return ((HSSFWorkbook) workbook).getInternalWorkbook().isUsing1904DateWindowing();
+    }
+
+    private static String getErrorData(Cell cell) {
+        if (cell instanceof XSSFCell)
+            return ((XSSFCell) cell).getErrorCellString();
+        return FormulaError.forInt(cell.getErrorCellValue()).getString();
+    }
+
+    private Object getFormulaData(Cell cell) {
+        switch (formulaMode) {
+            case CACHED:
+                switch (cell.getCachedFormulaResultType()) {
+                    case STRING:
+                        return cell.getStringCellValue();
+                    case NUMERIC:
+                        return getNumericData(cell, cell.getNumericCellValue());
+                    case BOOLEAN:
+                        return cell.getBooleanCellValue();
+                    case ERROR:
+                        return getErrorData(cell);
+                    default:
+                        return null;
+                }
+            case EVALUATED:
+                CellValue value = evaluator.evaluate(cell);
+                switch (value.getCellType()) {
+                    case BLANK:
+                        return "";
+                    case STRING:
+                        return value.getStringValue();
+                    case NUMERIC:
+                        return getNumericData(cell, value.getNumberValue());
+                    case BOOLEAN:
+                        return value.getBooleanValue();
+                    case ERROR:
+                        return FormulaError.forInt(value.getErrorValue()).getString();
+                    default:
+                        return null;
+                }
+            default:
+                return cell.getCellFormula();
+        }
+    }
+
+    @Override
+    public List<CellRangeAddress> getMergedRegions() {
+        return merged ? sheet.getMergedRegions() : Collections.emptyList();
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        resource.close();
+    }
+}
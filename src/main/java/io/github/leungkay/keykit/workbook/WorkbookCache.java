@@ -0,0 +1,222 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <p>按文件路径缓存读取结果和模板文件，文件的大小或修改时间变化后缓存自动失效。</p>
+ * <p>条目数或占用的字节数超过上限时淘汰最久没有使用的条目。读取结果按文件大小估算占用，模板按快照的实际大小计算。</p>
+ * <p>缓存的读取结果是同一个不可修改的List，多次读取共享其中的每一行，调用方不能修改。</p>
+ * <p>线程安全，多个reader可以共用一个缓存。</p>
+ */
+public class WorkbookCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries 最多缓存多少个条目
+     * @param maxBytes   所有条目估算占用的字节数上限
+     */
+    public WorkbookCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        // 按访问顺序排列 最久没有使用的在最前面
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param filePath 读取的文件
+     * @param params   读取参数，参数相同的读取共用一个条目
+     * @param loader   没有命中时读取文件
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String filePath, Object params, Supplier<T> loader) {
+        File file = new File(filePath).getAbsoluteFile();
+        Key key = new Key(file.getPath(), params);
+        long length = file.length();
+        long modified = file.lastModified();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.length == length && entry.modified == modified) {
+                    hits.incrementAndGet();
+                    return (T) entry.value;
+                }
+                // 文件已经变化
+                remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        // 读取文件时不持有锁 同时没有命中时可能重复读取
+        T value = loader.get();
+        long weight = value instanceof byte[] ? ((byte[]) value).length : length;
+        synchronized (this) {
+            Entry old = entries.put(key, new Entry(value, length, modified, weight));
+            if (old != null) {
+                bytes -= old.weight;
+            }
+            bytes += weight;
+            evict();
+        }
+        return value;
+    }
+
+    /**
+     * @param filePath 模板文件
+     * @return 模板的快照，所有部件不压缩地重新打包，创建模板时不需要解压，调用方不能修改
+     */
+    byte[] template(@NonNull String filePath) {
+        return get(filePath, Key.TEMPLATE, () -> snapshot(filePath));
+    }
+
+    /**
+     * 删除一个文件的所有条目
+     *
+     * @param filePath 文件路径
+     */
+    public synchronized void invalidate(@NonNull String filePath) {
+        String path = new File(filePath).getAbsoluteFile().getPath();
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().path.equals(path)) {
+                bytes -= e.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 所有条目估算占用的字节数
+     */
+    public synchronized long getWeight() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.weight;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        // 至少保留刚放入的条目
+        while ((entries.size() > maxEntries || bytes > maxBytes) && entries.size() > 1) {
+            Entry eldest = it.next();
+            bytes -= eldest.weight;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @SneakyThrows
+    private static byte[] snapshot(String filePath) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(filePath))));
+             ZipOutputStream out = new ZipOutputStream(bos)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                byte[] part = IOUtils.toByteArray(in);
+                // 不压缩的条目要预先写好大小和CRC
+                ZipEntry stored = new ZipEntry(entry.getName());
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(part.length);
+                stored.setCompressedSize(part.length);
+                CRC32 crc = new CRC32();
+                crc.update(part);
+                stored.setCrc(crc.getValue());
+                out.putNextEntry(stored);
+                out.write(part);
+                out.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static class Key {
+        private static final Object TEMPLATE = new Object();
+        private final String path;
+        private final Object params;
+
+        Key(String path, Object params) {
+            this.path = path;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return path.equals(key.path) && Objects.equals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{path, params});
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long length;
+        private final long modified;
+        private final long weight;
+
+        Entry(Object value, long length, long modified, long weight) {
+            this.value = value;
+            this.length = length;
+            this.modified = modified;
+            this.weight = weight;
+        }
+    }
+}
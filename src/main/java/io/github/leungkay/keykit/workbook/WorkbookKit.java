@@ -2,16 +2,17 @@ package io.github.leungkay.keykit.workbook;
 
 import lombok.NonNull;
 import lombok.SneakyThrows;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class WorkbookKit {
 
@@ -21,6 +22,23 @@ public class WorkbookKit {
         return new WorkbookTemplate(workbook);
     }
 
+    /**
+     * <p>模板文件没有变化时从缓存的快照创建，不再读取磁盘和解压，每次返回独立的模板，可以多个线程同时导出。</p>
+     * <p>每个模板仍然要解析一次工作簿的XML。</p>
+     *
+     * @param filePath 模板文件路径
+     * @param cache    缓存
+     */
+    @SneakyThrows
+    public static WorkbookTemplate build(@NonNull String filePath, @NonNull WorkbookCache cache) {
+        XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(cache.template(filePath)));
+        return new WorkbookTemplate(workbook);
+    }
+
+    public static WorkbookReader reader(String filePath) {
+        return new WorkbookReader(filePath);
+    }
+
     /**
      * @param filePath 待读取的文件路径
      * @param startX   横坐标(列)
@@ -28,95 +46,89 @@ public class WorkbookKit {
      * @param width    读取多少列
      */
     @SuppressWarnings("rawtypes")
-    @SneakyThrows
     public static List<List> read(String filePath, int startX, int startY, int width) {
-        XSSFWorkbook workbook = new XSSFWorkbook(filePath);
-        return internalRead(workbook, 0, startX, startY, List.class, new String[width]);
+        return reader(filePath).locate(startX, startY).read(width);
     }
 
     @SuppressWarnings("rawtypes")
-    @SneakyThrows
     public static List<Map> read(String filePath, int startX, int startY, String... fields) {
-        XSSFWorkbook workbook = new XSSFWorkbook(filePath);
-        return internalRead(workbook, 0, startX, startY, Map.class, fields);
+        return reader(filePath).locate(startX, startY).read(fields);
     }
 
-    @SneakyThrows
     public static <T> List<T> read(String filePath, int startX, int startY, Class<T> clazz, String... fields) {
-        XSSFWorkbook workbook = new XSSFWorkbook(filePath);
-        return internalRead(workbook, 0, startX, startY, clazz, fields);
+        return reader(filePath).locate(startX, startY).read(clazz, fields);
+    }
+
+    /**
+     * 流式逐行读取，返回的迭代器用完必须关闭
+     *
+     * @param filePath 待读取的文件路径
+     * @param startX   第几列开始读取，从0开始
+     * @param startY   第几行开始读取，从0开始
+     * @param clazz    每一行数据的包装类型
+     * @param fields   每一列对应的字段
+     */
+    public static <T> RowIterator<T> iterate(String filePath, int startX, int startY, Class<T> clazz, String... fields) {
+        return reader(filePath).locate(startX, startY).streaming().iterate(clazz, fields);
+    }
+
+    /**
+     * 流式逐行读取，返回的Stream用完必须关闭
+     *
+     * @param filePath 待读取的文件路径
+     * @param startX   第几列开始读取，从0开始
+     * @param startY   第几行开始读取，从0开始
+     * @param clazz    每一行数据的包装类型
+     * @param fields   每一列对应的字段
+     */
+    public static <T> Stream<T> stream(String filePath, int startX, int startY, Class<T> clazz, String... fields) {
+        return reader(filePath).locate(startX, startY).streaming().stream(clazz, fields);
     }
 
     /**
-     * @param file   待读取的文件
-     * @param index  待读取的表单
-     * @param startX 第几列开始读取，从0开始
-     * @param startY 第几行开始读取，从0开始
-     * @param clazz  返回数据是否用bean包装，如果是null则用List<Object>包装
-     * @param fields 一共读几列
+     * @param filePath 文件路径
+     * @return 是否是xls格式，按文件头判断，和扩展名无关
+     */
+    @SneakyThrows
+    static boolean isLegacy(String filePath) {
+        return FileMagic.valueOf(new File(filePath)) == FileMagic.OLE2;
+    }
+
+    /**
+     * @param cursor    已经定位到起始行之前的游标
+     * @param startX    第几列开始读取，从0开始
+     * @param processor 把每一行数据包装成返回值
+     * @param width     一共读几列
      * @return 每一行数据
      */
-    private static <T> List<T> internalRead(XSSFWorkbook file, int index, int startX, int startY, @NonNull Class<T> clazz, String... fields) {
-        XSSFSheet sheet = file.getSheetAt(index);
+    static <T> List<T> internalRead(SheetCursor cursor, int startX, RowProcessor<T> processor, int width) {
         // 最后返回读取的内容
         List<T> lines = new ArrayList<>();
         // 合并单元格区域
-        List<CellRangeAddress> regions = sheet.getMergedRegions();
-        // 最后一行
-        int rowNum = sheet.getLastRowNum();
-        // 生成多种返回值类型
-        RowProcessor<T> processor = RowProcessorFactory.getRowProcessor(clazz, fields);
+        MergedRegionIndex regions = new MergedRegionIndex(cursor.getMergedRegions());
         // 从指定的行开始读取数据
-        for (int i = startY; i <= rowNum; i++) {
-            XSSFRow row = sheet.getRow(i);
-            // 从指定的列开始读取数 读取不超过指定的列数
-            for (int j = startX; j < startX + fields.length; j++) {
-                // 默认标记成不是合并单元格区域
-                boolean merged = false;
-                for (CellRangeAddress region : regions) {
-                    // 当前单元格是否在被合并区域当中
-                    if (region.isInRange(i, j)) {
-                        merged = true;
-                        // 如果合并了单元格 则只有第一个格的数据被记入List 其余位置null
-                        if (region.getFirstRow() == i && region.getFirstColumn() == j) {
-                            processor.push(j - startX, getData(row, j));
-                        } else {
-                            processor.push(j - startX, null);
-                        }
-                        // 当前单元格只可能命中一个区域
-                        break;
-                    }
-                }
-                // 遍历过所有合并区域没有命中
-                if (!merged) {
-                    processor.push(j - startX, getData(row, j));
-                }
-            }
-            lines.add(processor.pull());
+        while (cursor.next()) {
+            lines.add(readRow(cursor, regions, startX, processor, width));
         }
         return lines;
     }
 
-    private static Object getData(XSSFRow row, int x) {
-        if (row == null)
-            return null;
-        XSSFCell cell = row.getCell(x);
-        if (cell == null)
-            return null;
-        switch (cell.getCellType()) {
-            case BLANK:
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                return cell.getNumericCellValue();
-            case FORMULA:
-                return cell.getCellFormula();
-            case BOOLEAN:
-                return cell.getBooleanCellValue();
-            case ERROR:
-                return cell.getErrorCellString();
-            default:
-                return null;
+    /**
+     * 把游标当前行的数据推入processor，返回包装好的一行
+     */
+    static <T> T readRow(SheetCursor cursor, MergedRegionIndex regions, int startX, RowProcessor<T> processor, int width) {
+        int i = cursor.getRowNum();
+        // 从指定的列开始读取数 读取不超过指定的列数
+        for (int j = startX; j < startX + width; j++) {
+            // 当前单元格只可能命中一个区域
+            CellRangeAddress region = regions.find(i, j);
+            // 如果合并了单元格 则只有第一个格的数据被记入List 其余位置null
+            if (region == null || region.getFirstRow() == i && region.getFirstColumn() == j) {
+                cursor.pushData(j, processor, j - startX);
+            } else {
+                processor.pushNull(j - startX);
+            }
         }
+        return processor.pull();
     }
 }
@@ -0,0 +1,503 @@
+package io.github.leungkay.keykit.workbook;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>读取Excel的builder，通过{@link WorkbookKit#reader(String)}创建。</p>
+ * <p>默认用POI的用户模型把整个文件解析到内存；调用{@link #streaming()}后改为逐行解析表单XML，内存占用和行数无关。</p>
+ */
+public class WorkbookReader {
+    private final String filePath;
+    private int sheetIndex;
+    private final ReadOptions options;
+    private boolean streaming;
+    private int sharedStringsCache;
+    private int[] sheets;
+    private ExecutorService executor;
+    private int workers;
+    private WorkbookCache cache;
+    private boolean csv;
+    private char delimiter = ',';
+    private Charset charset = StandardCharsets.UTF_8;
+
+    WorkbookReader(@NonNull String filePath) {
+        this.filePath = filePath;
+        this.options = new ReadOptions();
+    }
+
+    /**
+     * @param index 待读取的表单，从0开始，默认第一个表单
+     * @return builder中间对象
+     */
+    public WorkbookReader sheet(int index) {
+        this.sheetIndex = index;
+        return this;
+    }
+
+    /**
+     * 使用流式读取，并且把共享字符串表存放到临时文件，适合不重复的字符串特别多的文件
+     *
+     * @param cacheSize 内存中最多缓存多少个字符串
+     * @return builder中间对象
+     */
+    public WorkbookReader sharedStringsCache(int cacheSize) {
+        if (cacheSize <= 0) throw new IllegalArgumentException("cacheSize must be positive");
+        this.sharedStringsCache = cacheSize;
+        this.streaming = true;
+        return this;
+    }
+
+    /**
+     * @param indexes {@link #readSheets}读取的表单，从0开始，默认读取全部表单
+     * @return builder中间对象
+     */
+    public WorkbookReader sheets(int... indexes) {
+        this.sheets = indexes;
+        return this;
+    }
+
+    /**
+     * @param executor {@link #readSheets}使用的线程池，默认{@link ForkJoinPool#commonPool()}
+     * @return builder中间对象
+     */
+    public WorkbookReader parallel(@NonNull ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * <p>流水线读取：一个线程解析，多个线程转换成返回值，结果仍然按行的顺序返回。适合转换成对象比解析更耗时的场景。</p>
+     * <p>转换线程使用{@link #parallel(ExecutorService)}指定的线程池，没有指定时创建专用线程。线程池中要有workers个空闲线程，转换线程没有按时启动时抛出IllegalStateException。</p>
+     * <p>只对{@link #read}生效，传入单个{@link RowProcessor}时无法复制，仍然单线程读取。</p>
+     *
+     * @param workers 转换线程数
+     * @return builder中间对象
+     */
+    public WorkbookReader pipelined(int workers) {
+        if (workers <= 0) throw new IllegalArgumentException("workers must be positive");
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * 使用缓存，文件没有变化时相同参数的{@link #read}直接返回上次的结果，返回的List不可修改
+     *
+     * @param cache 可以被多个reader共用
+     * @return builder中间对象
+     */
+    public WorkbookReader cache(@NonNull WorkbookCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * @param x 第几列开始读取，从0开始
+     * @param y 第几行开始读取，从0开始
+     * @return builder中间对象
+     */
+    public WorkbookReader locate(int x, int y) {
+        this.options.setStartX(x).setStartY(y);
+        return this;
+    }
+
+    /**
+     * @param rows 最多读取多少行，读够之后停止解析，适合预览
+     * @return builder中间对象
+     */
+    public WorkbookReader limit(int rows) {
+        if (rows < 0) throw new IllegalArgumentException("rows must not be negative");
+        this.options.setLimit(rows);
+        return this;
+    }
+
+    /**
+     * @param y 读取到第几行为止（包含这一行），从0开始
+     * @return builder中间对象
+     */
+    public WorkbookReader endRow(int y) {
+        if (y < 0) throw new IllegalArgumentException("y must not be negative");
+        this.options.setEndRow(y);
+        return this;
+    }
+
+    /**
+     * 不处理合并单元格，合并区域中的每个单元格都按文件中的内容返回。
+     * 流式读取时合并区域写在表单末尾，不处理合并单元格就不需要预先扫描整个表单，配合{@link #limit(int)}可以只解析文件开头的部分。
+     *
+     * @return builder中间对象
+     */
+    public WorkbookReader ignoreMergedRegions() {
+        this.options.setMerged(false);
+        return this;
+    }
+
+    /**
+     * @param mode 公式单元格返回公式、缓存的结果还是重新计算的结果，默认返回公式
+     * @return builder中间对象
+     */
+    public WorkbookReader formula(@NonNull FormulaMode mode) {
+        this.options.setFormulaMode(mode);
+        return this;
+    }
+
+    /**
+     * 按CSV文件读取，CSV文件只有一个表单，总是流式读取。扩展名是csv的文件不调用也按逗号分隔、UTF-8编码读取。
+     *
+     * @param delimiter 字段分隔符
+     * @param charset   文件编码，分隔符、引号和换行必须是单字节ASCII
+     * @return builder中间对象
+     */
+    public WorkbookReader csv(char delimiter, @NonNull Charset charset) {
+        this.csv = true;
+        this.delimiter = delimiter;
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * 日期格式的数字单元格转换成日期返回，是否是日期格式按单元格样式判断，每个样式只判断一次
+     *
+     * @param mode 日期单元格的返回类型，默认{@link DateMode#RAW}返回数字
+     * @return builder中间对象
+     */
+    public WorkbookReader dates(@NonNull DateMode mode) {
+        this.options.setDateMode(mode);
+        return this;
+    }
+
+    /**
+     * 使用流式读取，xlsx逐行解析表单XML，xls逐条解析记录
+     *
+     * @return builder中间对象
+     */
+    public WorkbookReader streaming() {
+        this.streaming = true;
+        return this;
+    }
+
+    /**
+     * @param width 读取多少列
+     * @return 每一行数据用List包装
+     */
+    @SuppressWarnings("rawtypes")
+    public List<List> read(int width) {
+        return read(List.class, new String[width]);
+    }
+
+    /**
+     * @param fields 每一列对应的key
+     * @return 每一行数据用Map包装
+     */
+    @SuppressWarnings("rawtypes")
+    public List<Map> read(String... fields) {
+        return read(Map.class, fields);
+    }
+
+    /**
+     * @param clazz  每一行数据的包装类型
+     * @param fields 每一列对应的字段
+     * @return 每一行数据
+     */
+    public <T> List<T> read(@NonNull Class<T> clazz, String... fields) {
+        Supplier<RowProcessor<T>> processors = () -> RowProcessorFactory.getRowProcessor(clazz, fields);
+        if (cache == null)
+            return read(processors, fields.length);
+        // 决定读取结果的参数都作为缓存的key
+        List<Object> params = Arrays.asList(sheetIndex, streaming, csv, delimiter, charset,
+                options.getStartX(), options.getStartY(), options.getEndRow(), options.getLimit(),
+                options.isMerged(), options.getFormulaMode(), options.getDateMode(), clazz, Arrays.asList(fields));
+        return cache.get(filePath, params, () -> Collections.unmodifiableList(read(processors, fields.length)));
+    }
+
+    /**
+     * @param processors 生成行处理器，流水线读取时每个转换线程使用一个
+     * @param width      读取多少列
+     * @return 每一行数据
+     */
+    public <T> List<T> read(@NonNull Supplier<RowProcessor<T>> processors, int width) {
+        if (workers <= 1)
+            return read(processors.get(), width);
+        try (SheetCursor cursor = openCursor(width)) {
+            return PipelinedReader.read(cursor, options.getStartX(), width, processors, workers, executor);
+        }
+    }
+
+    /**
+     * @param processor 自定义的行处理器
+     * @param width     读取多少列
+     * @return 每一行数据
+     */
+    public <T> List<T> read(@NonNull RowProcessor<T> processor, int width) {
+        try (SheetCursor cursor = openCursor(width)) {
+            return WorkbookKit.internalRead(cursor, options.getStartX(), processor, width);
+        }
+    }
+
+    /**
+     * 按列读取，适合只有数字的分析类表单，数字不装箱，文本按字典编码
+     *
+     * @param fields 每一列对应的字段
+     * @return 按列存放的结果
+     */
+    public ColumnFrame readColumns(String... fields) {
+        Row2ColumnProcessor processor = new Row2ColumnProcessor(fields);
+        try (RowIterator<Void> iterator = iterate(processor, fields.length)) {
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+        }
+        return processor.toFrame();
+    }
+
+    /**
+     * 逐行回调，每一行都复用同一个{@link RowView}，不为每一行创建对象，适合扫描统计的场景
+     *
+     * @param consumer 处理每一行，RowView只在回调中有效
+     * @param fields   每一列对应的字段名
+     * @return 一共读取了多少行
+     */
+    public long forEach(@NonNull Consumer<RowView> consumer, String... fields) {
+        long rows = 0;
+        try (RowIterator<RowView> iterator = iterate(new Row2ViewProcessor(fields), fields.length)) {
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param clazz  每一行数据的包装类型
+     * @param fields 每一列对应的字段
+     * @return 逐行解析的迭代器，用完必须关闭
+     */
+    public <T> RowIterator<T> iterate(@NonNull Class<T> clazz, String... fields) {
+        return iterate(RowProcessorFactory.getRowProcessor(clazz, fields), fields.length);
+    }
+
+    /**
+     * @param processor 自定义的行处理器
+     * @param width     读取多少列
+     * @return 逐行解析的迭代器，用完必须关闭
+     */
+    public <T> RowIterator<T> iterate(@NonNull RowProcessor<T> processor, int width) {
+        return new RowIterator<>(openCursor(width), options.getStartX(), processor, width);
+    }
+
+    /**
+     * @param clazz  每一行数据的包装类型
+     * @param fields 每一列对应的字段
+     * @return 逐行解析的顺序流，用完必须关闭，推荐放在try-with-resources中
+     */
+    public <T> Stream<T> stream(@NonNull Class<T> clazz, String... fields) {
+        return stream(RowProcessorFactory.getRowProcessor(clazz, fields), fields.length);
+    }
+
+    /**
+     * @param processor 自定义的行处理器
+     * @param width     读取多少列
+     * @return 逐行解析的顺序流，用完必须关闭，推荐放在try-with-resources中
+     */
+    public <T> Stream<T> stream(@NonNull RowProcessor<T> processor, int width) {
+        RowIterator<T> iterator = iterate(processor, width);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * @param batchSize 每批多少行
+     * @param consumer  处理每一批数据，比如批量插入数据库
+     * @param clazz     每一行数据的包装类型
+     * @param fields    每一列对应的字段
+     * @return 一共读取了多少行
+     */
+    public <T> long batch(int batchSize, @NonNull Consumer<List<T>> consumer, @NonNull Class<T> clazz, String... fields) {
+        return batch(batchSize, consumer, RowProcessorFactory.getRowProcessor(clazz, fields), fields.length);
+    }
+
+    /**
+     * <p>按固定行数分批读取，解析在后台线程进行，回调在调用方线程执行，解析下一批和处理当前批同时进行。</p>
+     * <p>只有两个批次的缓冲区轮流使用，回调处理慢时解析线程会等待，内存中最多两批数据。</p>
+     * <p>传给回调的List在回调返回后会被清空复用，需要保留的数据要在回调中复制出来。</p>
+     *
+     * @param batchSize 每批多少行
+     * @param consumer  处理每一批数据，比如批量插入数据库
+     * @param processor 自定义的行处理器
+     * @param width     读取多少列
+     * @return 一共读取了多少行
+     */
+    @SneakyThrows
+    public <T> long batch(int batchSize, @NonNull Consumer<List<T>> consumer, @NonNull RowProcessor<T> processor, int width) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive");
+        BlockingQueue<List<T>> free = new ArrayBlockingQueue<>(2);
+        // 两个缓冲区加上结束标记
+        BlockingQueue<List<T>> full = new ArrayBlockingQueue<>(3);
+        free.add(new ArrayList<>(batchSize));
+        free.add(new ArrayList<>(batchSize));
+        List<T> end = Collections.emptyList();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        // 在调用方线程打开 打开失败直接抛出
+        SheetCursor cursor = openCursor(width);
+        Thread parser = new Thread(() -> {
+            try (SheetCursor c = cursor) {
+                MergedRegionIndex regions = new MergedRegionIndex(c.getMergedRegions());
+                List<T> buffer = free.take();
+                while (c.next()) {
+                    buffer.add(WorkbookKit.readRow(c, regions, options.getStartX(), processor, width));
+                    if (buffer.size() == batchSize) {
+                        full.put(buffer);
+                        buffer = free.take();
+                    }
+                }
+                if (!buffer.isEmpty()) {
+                    full.put(buffer);
+                }
+            } catch (InterruptedException e) {
+                // 回调出错 提前结束解析
+            } catch (Throwable e) {
+                error.set(e);
+            } finally {
+                full.offer(end);
+            }
+        }, "keykit-batch-reader");
+        parser.setDaemon(true);
+        parser.start();
+        long rows = 0;
+        try {
+            List<T> batch;
+            while ((batch = full.take()) != end) {
+                rows += batch.size();
+                consumer.accept(batch);
+                batch.clear();
+                free.put(batch);
+            }
+        } catch (Throwable e) {
+            parser.interrupt();
+            throw e;
+        }
+        if (error.get() != null)
+            throw error.get();
+        return rows;
+    }
+
+    /**
+     * <p>并行读取多个结构相同的表单，每个表单一个任务，所有任务共享同一个只读打开的文件，xls文件每个任务各自打开。</p>
+     * <p>固定使用流式读取，{@link #sheet(int)}的设置不生效，不支持{@link FormulaMode#EVALUATED}。</p>
+     *
+     * @param clazz  每一行数据的包装类型
+     * @param fields 每一列对应的字段
+     * @return 按表单序号排列的每个表单的数据
+     */
+    public <T> Map<Integer, List<T>> readSheets(@NonNull Class<T> clazz, String... fields) {
+        return readSheets(() -> RowProcessorFactory.getRowProcessor(clazz, fields), fields.length);
+    }
+
+    /**
+     * @param processors 每个表单使用一个新的行处理器
+     * @param width      读取多少列
+     * @return 按表单序号排列的每个表单的数据
+     */
+    public <T> Map<Integer, List<T>> readSheets(@NonNull Supplier<RowProcessor<T>> processors, int width) {
+        ReadOptions window = options.window(width);
+        if (isCsv())
+            return readSheets(new int[]{0}, index -> new CsvSheetCursor(filePath, window, delimiter, charset), processors, width);
+        checkStreamable();
+        if (WorkbookKit.isLegacy(filePath)) {
+            // xls的每个表单各自打开文件
+            int[] indexes = sheets != null ? sheets : IntStream.range(0, HSSFStreamingSheetCursor.getSheetCount(filePath)).toArray();
+            return readSheets(indexes, index -> new HSSFStreamingSheetCursor(filePath, index, window), processors, width);
+        }
+        try (StreamingWorkbook workbook = new StreamingWorkbook(filePath, sharedStringsCache)) {
+            int[] indexes = sheets != null ? sheets : IntStream.range(0, workbook.getSheetCount()).toArray();
+            // 等所有任务结束再关闭文件
+            return readSheets(indexes, index -> workbook.openSheet(index, window, null), processors, width);
+        }
+    }
+
+    @SneakyThrows
+    private <T> Map<Integer, List<T>> readSheets(int[] indexes, IntFunction<SheetCursor> sheet, Supplier<RowProcessor<T>> processors, int width) {
+        List<Callable<List<T>>> tasks = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            tasks.add(() -> {
+                try (SheetCursor cursor = sheet.apply(index)) {
+                    return WorkbookKit.internalRead(cursor, options.getStartX(), processors.get(), width);
+                }
+            });
+        }
+        List<Future<List<T>>> futures = (executor != null ? executor : ForkJoinPool.commonPool()).invokeAll(tasks);
+        Map<Integer, List<T>> result = new LinkedHashMap<>();
+        for (int i = 0; i < indexes.length; i++) {
+            try {
+                result.put(indexes[i], futures.get(i).get());
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        return result;
+    }
+
+    private boolean isCsv() {
+        return csv || filePath.toLowerCase().endsWith(".csv");
+    }
+
+    private void checkStreamable() {
+        if (options.getFormulaMode() == FormulaMode.EVALUATED)
+            throw new UnsupportedOperationException("streaming read cannot evaluate formulas");
+    }
+
+    SheetCursor openCursor() {
+        return openCursor(-1);
+    }
+
+    /**
+     * @param width 读取多少列，流式读取时窗口之外的单元格不解码
+     */
+    SheetCursor openCursor(int width) {
+        ReadOptions window = options.window(width);
+        if (isCsv()) {
+            if (sheetIndex != 0) throw new IllegalArgumentException("csv file has only one sheet");
+            return new CsvSheetCursor(filePath, window, delimiter, charset);
+        }
+        if (streaming) {
+            checkStreamable();
+            if (WorkbookKit.isLegacy(filePath))
+                return new HSSFStreamingSheetCursor(filePath, sheetIndex, window);
+            StreamingWorkbook workbook = new StreamingWorkbook(filePath, sharedStringsCache);
+            try {
+                return workbook.openSheet(sheetIndex, window, workbook);
+            } catch (Throwable e) {
+                // 游标的构造方法会偷偷抛出IOException等受检异常 一样要关闭文件
+                workbook.close();
+                throw e;
+            }
+        }
+        return new UserModelSheetCursor(filePath, sheetIndex, window);
+    }
+}
@@ -1,21 +1,34 @@
 package io.github.leungkay.keykit.workbook;
 
+import lombok.NonNull;
 import lombok.SneakyThrows;
-import org.apache.commons.io.FileUtils;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.lang.reflect.Method;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class WorkbookTemplate {
 
@@ -23,16 +36,79 @@ public class WorkbookTemplate {
     private final XSSFSheet sheet;
     private final List<String> header;
     private final List<String> fields;
-    private final List<Map<String, Object>> contents;
+    // 按添加顺序排列的内容来源 导出时才逐行拉取
+    private final List<Source> contents;
+    // 最后一个来源是内存中的行时继续添加到这里
+    private List<Map<String, Object>> buffered;
+    // 导出后需要关闭的Stream
+    private final List<AutoCloseable> resources;
     private int startX;
     private int startY;
+    // 大于0时使用SXSSF流式导出
+    private int rowAccessWindow;
+    private boolean compressTempFiles;
+    // 按表头序号指定的数据格式
+    private final Map<Integer, String> formats;
+    // 没有指定格式并且模板单元格是常规格式时 按值的类型自动使用的格式
+    private String dateFormat = "yyyy-mm-dd";
+    private String dateTimeFormat = "yyyy-mm-dd hh:mm:ss";
+    private String numberFormat;
+    // 以下字段只在第一个表单的模板中使用 整个工作簿共用
+    private final WorkbookTemplate root;
+    private final List<WorkbookTemplate> sheets;
+    private StyleCache styles;
+    private boolean parallel;
+    private ExecutorService executor;
 
     public WorkbookTemplate(XSSFWorkbook workbook) {
-        this.workbook = workbook;
-        this.sheet = workbook.getSheetAt(0);
+        this(null, workbook.getSheetAt(0));
+    }
+
+    private WorkbookTemplate(WorkbookTemplate root, XSSFSheet sheet) {
+        this.workbook = sheet.getWorkbook();
+        this.sheet = sheet;
         this.header = new ArrayList<>();
         this.fields = new ArrayList<>();
         this.contents = new ArrayList<>();
+        this.resources = new ArrayList<>();
+        this.formats = new HashMap<>();
+        this.root = root != null ? root : this;
+        this.sheets = new ArrayList<>();
+        this.root.sheets.add(this);
+    }
+
+    /**
+     * 同一个工作簿中的另一个表单，导出时和其他表单一起写入同一个文件
+     *
+     * @param index 表单的序号
+     * @return 这个表单的builder中间对象
+     */
+    public WorkbookTemplate sheet(int index) {
+        XSSFSheet sheet = workbook.getSheetAt(index);
+        for (WorkbookTemplate template : root.sheets) {
+            if (template.sheet == sheet) return template;
+        }
+        return new WorkbookTemplate(root, sheet);
+    }
+
+    /**
+     * 复制当前表单（包括表头和第一行的样式），表头、内容位置和数据格式的设置也一起复制，内容不复制
+     *
+     * @param name 新表单的名称
+     * @return 新表单的builder中间对象
+     */
+    public WorkbookTemplate cloneSheet(@NonNull String name) {
+        XSSFSheet clone = workbook.cloneSheet(workbook.getSheetIndex(sheet), name);
+        WorkbookTemplate template = new WorkbookTemplate(root, clone);
+        template.header.addAll(this.header);
+        template.fields.addAll(this.fields);
+        template.startX = this.startX;
+        template.startY = this.startY;
+        template.formats.putAll(this.formats);
+        template.dateFormat = this.dateFormat;
+        template.dateTimeFormat = this.dateTimeFormat;
+        template.numberFormat = this.numberFormat;
+        return template;
     }
 
     /**
@@ -90,98 +166,474 @@ public class WorkbookTemplate {
             Object value = contents[i - 1];
             contentMap.put(key, value);
         }
-        this.contents.add(contentMap);
-        return this;
+        return content(contentMap);
     }
 
     public WorkbookTemplate contents(List<Map<String, Object>> contents) {
-        this.contents.addAll(contents);
+        contents.forEach(this::content);
         return this;
     }
 
     public WorkbookTemplate content(Map<String, Object> content) {
-        this.contents.add(content);
+        if (this.buffered == null) {
+            List<Map<String, Object>> buffered = new ArrayList<>();
+            this.contents.add(new Source(buffered::iterator, null));
+            this.buffered = buffered;
+        }
+        this.buffered.add(content);
+        return this;
+    }
+
+    /**
+     * <p>导出时才从迭代器逐行拉取内容，内容不会全部保存在内存中，配合流式导出时内存占用和行数无关。只能导出一次。</p>
+     * <p>内容在导出线程上边拉取边写入，不另起线程提前生成，数据库游标这类绑定调用线程的内容也可以直接使用。</p>
+     *
+     * @param contents 内容，比如数据库游标
+     * @return builder中间对象
+     */
+    public WorkbookTemplate contents(@NonNull Iterator<? extends Map<String, Object>> contents) {
+        this.buffered = null;
+        this.contents.add(new Source(() -> contents, null));
+        return this;
+    }
+
+    /**
+     * 导出时才从Stream逐行拉取内容，导出结束后关闭Stream。只能导出一次。
+     *
+     * @param contents 内容
+     * @return builder中间对象
+     */
+    public WorkbookTemplate contents(@NonNull Stream<? extends Map<String, Object>> contents) {
+        this.resources.add(contents);
+        return contents(contents.iterator());
+    }
+
+    /**
+     * 导出时才逐行调用supplier获取内容，返回null表示没有更多的行。只能导出一次。
+     *
+     * @param contents 每次调用返回一行
+     * @return builder中间对象
+     */
+    public WorkbookTemplate contents(@NonNull Supplier<? extends Map<String, Object>> contents) {
+        return contents(new Iterator<Map<String, Object>>() {
+            private Map<String, Object> next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = contents.get();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map<String, Object> content = next;
+                next = null;
+                return content;
+            }
+        });
+    }
+
+    /**
+     * 按header中的fields调用getter取值，导出时直接写入单元格。调用时复制一份列表，之后修改或者复用列表不影响导出。
+     *
+     * @param contents 对象
+     * @return builder中间对象
+     */
+    public WorkbookTemplate beanContents(@NonNull List<?> contents) {
+        this.buffered = null;
+        List<?> snapshot = new ArrayList<>(contents);
+        this.contents.add(new Source(snapshot::iterator, this.fields.toArray(new String[0])));
+        return this;
+    }
+
+    /**
+     * 指定一列的数据格式，格式相同的单元格共用一个样式
+     *
+     * @param index  表头的序号
+     * @param format 数据格式，比如 yyyy-mm-dd、#,##0.00
+     * @return builder中间对象
+     */
+    public WorkbookTemplate format(int index, @NonNull String format) {
+        this.formats.put(index, format);
+        return this;
+    }
+
+    /**
+     * @param format LocalDate默认的数据格式，为null时不自动设置
+     * @return builder中间对象
+     */
+    public WorkbookTemplate dateFormat(String format) {
+        this.dateFormat = format;
         return this;
     }
 
+    /**
+     * @param format LocalDateTime默认的数据格式，为null时不自动设置
+     * @return builder中间对象
+     */
+    public WorkbookTemplate dateTimeFormat(String format) {
+        this.dateTimeFormat = format;
+        return this;
+    }
+
+    /**
+     * @param format 数字默认的数据格式，为null（默认）时不自动设置
+     * @return builder中间对象
+     */
+    public WorkbookTemplate numberFormat(String format) {
+        this.numberFormat = format;
+        return this;
+    }
+
+    /**
+     * <p>使用SXSSF流式导出，内存中只保留最近的若干行，更早的行写到临时文件，导出的行数不受内存限制。</p>
+     * <p>模板中已有的行（最后一行之前）仍然直接写入模板，之后的行流式写出，表头和第一行的样式和普通导出一样保留。</p>
+     *
+     * @param rowAccessWindow 内存中保留的行数
+     * @return builder中间对象
+     */
+    public WorkbookTemplate streaming(int rowAccessWindow) {
+        return streaming(rowAccessWindow, true);
+    }
+
+    /**
+     * @param rowAccessWindow   内存中保留的行数
+     * @param compressTempFiles 是否压缩临时文件，压缩后磁盘占用小很多，但是更耗CPU
+     * @return builder中间对象
+     */
+    public WorkbookTemplate streaming(int rowAccessWindow, boolean compressTempFiles) {
+        if (rowAccessWindow <= 0) throw new IllegalArgumentException("rowAccessWindow must be positive");
+        root.rowAccessWindow = rowAccessWindow;
+        root.compressTempFiles = compressTempFiles;
+        return this;
+    }
+
+    /**
+     * 并行导出多个表单，默认使用{@link ForkJoinPool#commonPool()}
+     *
+     * @return builder中间对象
+     * @see #parallel(ExecutorService)
+     */
+    public WorkbookTemplate parallel() {
+        root.parallel = true;
+        return this;
+    }
+
+    /**
+     * <p>每个表单在一个线程中拉取内容并写入，最后组装成一个文件，耗时随CPU核数而不是表单数增长。</p>
+     * <p>只在{@link #streaming}导出时生效：流式导出的每个表单各自写到临时文件，可以并行；普通导出的所有表单共用内存中的工作簿，仍然逐个写入。</p>
+     *
+     * @param executor 写入表单使用的线程池
+     * @return builder中间对象
+     */
+    public WorkbookTemplate parallel(@NonNull ExecutorService executor) {
+        root.parallel = true;
+        root.executor = executor;
+        return this;
+    }
+
+    public byte[] export() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        export(bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * 直接写到输出流，不在内存中缓存整个文件，输出流由调用方关闭
+     *
+     * @param out 输出流，比如HTTP响应
+     */
     @SneakyThrows
-    public WorkbookTemplate beanContents(List<?> contents) {
-        for (Object obj : contents) {
-            Map<String, Method> getterMethods = Arrays.stream(obj.getClass().getMethods())
-                    .filter(method -> method.getName().startsWith("get"))
-                    .collect(Collectors.toMap(Method::getName, method -> method, (method1, method2) -> method1.getParameterCount() == 0 ? method1 : method2));
-            Map<String, Object> content = new LinkedHashMap<>();
-            for (int i = 0; i < this.fields.size(); i++) {
-                String field = this.fields.get(i);
-                Method getter = getterMethods.get("get" + field.toUpperCase().charAt(0) + field.substring(1));
-                if (getter != null)
-                    content.put(String.valueOf(i), getter.invoke(obj));
-            }
-            content(content);
+    public void export(@NonNull OutputStream out) {
+        if (root != this) {
+            // 所有表单一起导出
+            root.export(out);
+            return;
+        }
+        try {
+            write(out);
+        } finally {
+            for (WorkbookTemplate template : sheets) {
+                for (AutoCloseable resource : template.resources) {
+                    resource.close();
+                }
+                template.resources.clear();
+            }
         }
-        return this;
     }
 
     @SneakyThrows
-    public byte[] export() {
-        // 列
-        int x = startX;
+    private void write(OutputStream out) {
+        if (rowAccessWindow <= 0) {
+            for (WorkbookTemplate template : sheets) {
+                template.fill(template.sheet::createRow, Integer.MAX_VALUE, false);
+            }
+            workbook.write(out);
+        } else {
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(workbook, rowAccessWindow, compressTempFiles);
+            try {
+                boolean concurrent = parallel && sheets.size() > 1;
+                List<Callable<Void>> tasks = new ArrayList<>(sheets.size());
+                for (WorkbookTemplate template : sheets) {
+                    XSSFSheet sheet = template.sheet;
+                    Sheet streamingSheet = streamingWorkbook.getSheetAt(workbook.getSheetIndex(sheet));
+                    int lastRowNum = sheet.getLastRowNum();
+                    // 模板中已有的行只能通过XSSF写入 之后的行由SXSSF写到临时文件
+                    tasks.add(() -> {
+                        template.fill(y -> y <= lastRowNum ? sheet.createRow(y) : streamingSheet.createRow(y), lastRowNum, concurrent);
+                        return null;
+                    });
+                }
+                if (concurrent) {
+                    List<Future<Void>> futures = (executor != null ? executor : ForkJoinPool.commonPool()).invokeAll(tasks);
+                    for (Future<Void> future : futures) {
+                        try {
+                            future.get();
+                        } catch (ExecutionException e) {
+                            throw e.getCause();
+                        }
+                    }
+                } else {
+                    for (Callable<Void> task : tasks) {
+                        task.call();
+                    }
+                }
+                // 各个表单的临时文件按顺序组装成一个文件
+                streamingWorkbook.write(out);
+            } finally {
+                // 删除临时文件
+                streamingWorkbook.dispose();
+            }
+        }
+    }
+
+    /**
+     * 直接写到文件，文件已经存在时覆盖
+     *
+     * @param targetPath 目标文件，上级目录不存在时自动创建
+     */
+    @SneakyThrows
+    public void export(@NonNull Path targetPath) {
+        Path parent = targetPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(targetPath))) {
+            export(out);
+        }
+    }
+
+    public void export(@NonNull String targetPath) {
+        export(Paths.get(targetPath));
+    }
+
+    /**
+     * 把内容逐行写入表单
+     *
+     * @param newRow          模板中没有的行如何创建
+     * @param lastTemplateRow 这一行之前的行通过XSSF写入
+     * @param concurrent      是否和其他表单同时写入
+     */
+    private void fill(IntFunction<Row> newRow, int lastTemplateRow, boolean concurrent) {
+        Column[] columns = compile();
         // 行
         int y = startY;
         CellStyle firstRowStyle = null;
-        List<CellStyle> firstRowCellStyles = new ArrayList<>();
-        for (Map<String, Object> content : this.contents) {
-            XSSFRow row;
-            if ((row = sheet.getRow(y)) != null) {
-                if (y == startY) {
-                    //添加
-                    firstRowStyle = row.getRowStyle();
-                    Iterator<Cell> it = row.cellIterator();
-                    while (it.hasNext()) {
-                        firstRowCellStyles.add(it.next().getCellStyle());
-                    }
+        for (Source source : this.contents) {
+            Iterator<?> it = source.rows.get();
+            Class<?> beanClass = null;
+            BeanAccessor accessor = null;
+            while (it.hasNext()) {
+                Object content = it.next();
+                if (source.fields != null && content.getClass() != beanClass) {
+                    beanClass = content.getClass();
+                    accessor = BeanAccessor.of(beanClass, source.fields);
                 }
-            } else {
-                row = sheet.createRow(y);
-                row.setRowStyle(firstRowStyle);
-            }
-            for (String header : this.header) {
-                String[] titleAndIndex = header.split("__");
-                String title = titleAndIndex[0];
-                String indexStr = titleAndIndex[1];
-                int index = Integer.parseInt(indexStr);
-                Object value;
-                XSSFCell cell;
-                cell = row.createCell(x + index);
-                if (firstRowCellStyles.size() > x + index) {
-                    cell.setCellStyle(firstRowCellStyles.get(x + index));
-                }
-                if ((value = content.get(header)) != null || (value = content.get(title)) != null || (value = content.get(indexStr)) != null) {
-                    if (value instanceof Double) {
-                        cell.setCellValue((Double) value);
-                    } else if (value instanceof Integer) {
-                        cell.setCellValue((Integer) value);
-                    } else if (value instanceof LocalDate) {
-                        cell.setCellValue((LocalDate) value);
-                    } else if (value instanceof LocalDateTime) {
-                        cell.setCellValue((LocalDateTime) value);
-                    } else if (value instanceof Boolean) {
-                        cell.setCellValue((Boolean) value);
-                    } else {
-                        cell.setCellValue(value.toString());
+                if (concurrent && y <= lastTemplateRow) {
+                    // XSSF的行和单元格共用工作簿的样式表和共享字符串表 和样式缓存使用同一个锁
+                    synchronized (workbook) {
+                        firstRowStyle = fillRow(y, columns, content, accessor, newRow, firstRowStyle);
                     }
+                } else {
+                    firstRowStyle = fillRow(y, columns, content, accessor, newRow, firstRowStyle);
                 }
+                y++;
             }
-            y++;
         }
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        workbook.write(bos);
-        return bos.toByteArray();
     }
 
-    @SneakyThrows
-    public void export(String targetPath) {
-        FileUtils.writeByteArrayToFile(new File(targetPath), export(), false);
+    /**
+     * @return 第一行的样式，之后新建的行沿用
+     */
+    private CellStyle fillRow(int y, Column[] columns, Object content, BeanAccessor accessor, IntFunction<Row> newRow, CellStyle firstRowStyle) {
+        Row row;
+        if ((row = sheet.getRow(y)) != null) {
+            if (y == startY) {
+                //添加
+                firstRowStyle = row.getRowStyle();
+                bindStyles(columns, row);
+            }
+        } else {
+            row = newRow.apply(y);
+            row.setRowStyle(firstRowStyle);
+        }
+        for (Column column : columns) {
+            Cell cell = row.createCell(column.x);
+            Object value = accessor != null ? accessor.get(content, column.index) : column.valueOf((Map<?, ?>) content);
+            if (value != null) {
+                column.write(cell, value);
+            } else if (column.style != null) {
+                cell.setCellStyle(column.style);
+            }
+        }
+        return firstRowStyle;
+    }
+
+    /**
+     * 每次导出把表头解析成列的写入计划，逐行写入时不再切分字符串
+     */
+    private Column[] compile() {
+        Column[] columns = new Column[this.header.size()];
+        for (int i = 0; i < columns.length; i++) {
+            String header = this.header.get(i);
+            int split = header.lastIndexOf("__");
+            String indexStr = header.substring(split + 2);
+            int index = Integer.parseInt(indexStr);
+            columns[i] = new Column(startX + index, index, header, header.substring(0, split), indexStr);
+        }
+        return columns;
+    }
+
+    /**
+     * 第一行已有的单元格样式按顺序对应到列
+     */
+    private static void bindStyles(Column[] columns, Row firstRow) {
+        List<CellStyle> firstRowCellStyles = new ArrayList<>();
+        Iterator<Cell> it = firstRow.cellIterator();
+        while (it.hasNext()) {
+            firstRowCellStyles.add(it.next().getCellStyle());
+        }
+        for (Column column : columns) {
+            if (firstRowCellStyles.size() > column.x) {
+                column.style = firstRowCellStyles.get(column.x);
+            }
+        }
     }
 
+    /**
+     * 一列写入某个类型的值时使用的样式，需要格式时从样式缓存获取
+     */
+    private CellStyle styleOf(Column column, Class<?> type) {
+        String format = formats.get(column.index);
+        if (format == null) {
+            // 模板已经设置了格式时不覆盖
+            if (column.style != null && column.style.getDataFormat() != 0) {
+                return column.style;
+            }
+            if (type == LocalDate.class) {
+                format = dateFormat;
+            } else if (type == LocalDateTime.class) {
+                format = dateTimeFormat;
+            } else if (type == Double.class || type == Integer.class) {
+                format = numberFormat;
+            }
+            if (format == null) {
+                return column.style;
+            }
+        }
+        return root.styleCache().get(column.style, format);
+    }
+
+    private StyleCache styleCache() {
+        // 创建时读取样式表 和写入XSSF单元格使用同一个锁
+        synchronized (workbook) {
+            if (styles == null) {
+                styles = new StyleCache(workbook);
+            }
+            return styles;
+        }
+    }
+
+    /**
+     * 按值的类型写入单元格
+     */
+    private static BiConsumer<Cell, Object> writerOf(Class<?> type) {
+        if (type == Double.class) {
+            return (cell, value) -> cell.setCellValue((Double) value);
+        } else if (type == Integer.class) {
+            return (cell, value) -> cell.setCellValue((Integer) value);
+        } else if (type == LocalDate.class) {
+            return (cell, value) -> cell.setCellValue((LocalDate) value);
+        } else if (type == LocalDateTime.class) {
+            return (cell, value) -> cell.setCellValue((LocalDateTime) value);
+        } else if (type == Boolean.class) {
+            return (cell, value) -> cell.setCellValue((Boolean) value);
+        } else {
+            return (cell, value) -> cell.setCellValue(value.toString());
+        }
+    }
+
+    /**
+     * 一列的写入计划
+     */
+    private class Column {
+        // 列的横坐标
+        private final int x;
+        // 表头的序号 对象按这个序号对应到fields
+        private final int index;
+        // 按 表头__序号、表头、序号 的顺序取值
+        private final String header;
+        private final String title;
+        private final String indexStr;
+        private CellStyle style;
+        // 上一个值的类型和对应的写入方法 一列的值通常是同一个类型
+        private Class<?> type;
+        private BiConsumer<Cell, Object> writer;
+        private CellStyle typedStyle;
+
+        Column(int x, int index, String header, String title, String indexStr) {
+            this.x = x;
+            this.index = index;
+            this.header = header;
+            this.title = title;
+            this.indexStr = indexStr;
+        }
+
+        Object valueOf(Map<?, ?> content) {
+            Object value;
+            if ((value = content.get(header)) != null || (value = content.get(title)) != null) {
+                return value;
+            }
+            return content.get(indexStr);
+        }
+
+        void write(Cell cell, Object value) {
+            if (value.getClass() != type) {
+                type = value.getClass();
+                writer = writerOf(type);
+                typedStyle = styleOf(this, type);
+            }
+            if (typedStyle != null) {
+                cell.setCellStyle(typedStyle);
+            }
+            writer.accept(cell, value);
+        }
+    }
+
+    /**
+     * 一组内容，导出时才获取迭代器
+     */
+    private static class Source {
+        private final Supplier<? extends Iterator<?>> rows;
+        // 为null时每一行是Map 否则每一行是对象 按这些字段调用getter
+        private final String[] fields;
+
+        Source(Supplier<? extends Iterator<?>> rows, String[] fields) {
+            this.rows = rows;
+            this.fields = fields;
+        }
+    }
 }
@@ -1,17 +1,65 @@
 package io.github.leungkay.keykit.workbook;
 
+import io.github.leungkay.keykit.date.DateKit;
+import io.github.leungkay.keykit.log.PingPong;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.var;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.NotOfficeXmlFileException;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Slf4j
 public class WorkbookKitTest {
@@ -71,6 +119,679 @@ public class WorkbookKitTest {
         Assertions.assertTrue(row.getIsMale());
     }
 
+    @Test
+    @DisplayName("测试流式读取一个区域，结果和一次性读取一致")
+    public void testStreamingRead() {
+        var result = WorkbookKit.reader(resourcePath + "ReadContent.xlsx").locate(1, 1).streaming().read(PersonBean.class, "name", "age", "isMale");
+        log.info(result.toString());
+        Assertions.assertIterableEquals(result, WorkbookKit.read(resourcePath + "ReadContent.xlsx", 1, 1, PersonBean.class, "name", "age", "isMale"));
+    }
+
+    @Test
+    @DisplayName("测试流式读取合并单元格、空行和空单元格，结果和一次性读取一致")
+    public void testStreamingReadMerged() {
+        String filePath = writeMergedContent();
+        var expected = WorkbookKit.reader(filePath).locate(0, 1).read(4);
+        var result = WorkbookKit.reader(filePath).locate(0, 1).streaming().read(4);
+        log.info(result.toString());
+        Assertions.assertEquals(6, result.size());
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals(Arrays.asList("A", null, 1.0D, "SUM(C2:C3)"), result.get(0));
+        Assertions.assertEquals(Arrays.asList(null, null, null, null), result.get(2));
+        Assertions.assertEquals(Arrays.asList("", null, null, null), result.get(3));
+    }
+
+    @Test
+    @DisplayName("测试逐行读取，每次只解析一行")
+    public void testStream() {
+        try (var stream = WorkbookKit.stream(resourcePath + "ReadContent.xlsx", 1, 1, PersonBean.class, "name", "age", "isMale")) {
+            var names = stream.map(PersonBean::getName).collect(Collectors.toList());
+            Assertions.assertEquals(Arrays.asList("张三", "李四", "王五"), names);
+        }
+        try (var iterator = WorkbookKit.iterate(resourcePath + "ReadContent.xlsx", 1, 1, Map.class, "name", "age", "isMale")) {
+            Assertions.assertTrue(iterator.hasNext());
+            Assertions.assertEquals("张三", iterator.next().get("name"));
+        }
+    }
+
+    @Test
+    @DisplayName("测试合并区域数量增加时读取耗时的变化，和逐个区域扫描的方式做对照")
+    public void testMergedRegionScale() {
+        PingPong pingPong = new PingPong(log, PingPong.LogLevel.INFO);
+        for (int count : new int[]{1000, 2000, 4000, 8000}) {
+            String filePath = writeMergedRegions(count);
+            String message = "读取" + count + "个合并区域的文件";
+            pingPong.ping(message);
+            var result = WorkbookKit.reader(filePath).streaming().read(20);
+            pingPong.pong(message);
+            Assertions.assertEquals(count / 10, result.size());
+            Assertions.assertEquals(0D, result.get(0).get(0));
+            Assertions.assertNull(result.get(0).get(1));
+            List<CellRangeAddress> regions;
+            try (var cursor = WorkbookKit.reader(filePath).streaming().openCursor()) {
+                regions = cursor.getMergedRegions();
+            }
+            message = "索引查找" + count + "个合并区域";
+            pingPong.ping(message);
+            MergedRegionIndex index = new MergedRegionIndex(regions);
+            int covered = 0;
+            for (int i = 0; i < result.size(); i++) {
+                for (int j = 0; j < 20; j++) {
+                    if (index.find(i, j) != null) {
+                        covered++;
+                    }
+                }
+            }
+            pingPong.pong(message);
+            Assertions.assertEquals(count * 2, covered);
+            // 对照组 每个单元格遍历全部区域
+            message = "逐个扫描" + count + "个合并区域";
+            pingPong.ping(message);
+            covered = 0;
+            for (int i = 0; i < result.size(); i++) {
+                for (int j = 0; j < 20; j++) {
+                    for (CellRangeAddress region : regions) {
+                        if (region.isInRange(i, j)) {
+                            covered++;
+                            break;
+                        }
+                    }
+                }
+            }
+            pingPong.pong(message);
+            Assertions.assertEquals(count * 2, covered);
+        }
+    }
+
+    @Test
+    @DisplayName("测试流式读取按XML规则找合并区域，不受注释、CDATA和属性写法影响")
+    @SneakyThrows
+    public void testScanMergedRegions() {
+        String xml = "<?xml version=\"1.0\"?>"
+                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<sheetData><row r=\"1\"><c r=\"A1\" t=\"inlineStr\"><is><t>a > b <![CDATA[<mergeCell ref=\"C1:C2\"/>]]></t></is></c></row></sheetData>"
+                + "<!-- <mergeCell ref=\"D1:D2\"/> -->"
+                + "<mergeCells count=\"2\"><mergeCell xref=\"E1:E2\" ref = 'A1:B2'/><mergeCell\nref=\"A3:A4\"></mergeCell></mergeCells>"
+                + "</worksheet>";
+        var regions = StreamingSheetCursor.scanMergedRegions(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(Arrays.asList(CellRangeAddress.valueOf("A1:B2"), CellRangeAddress.valueOf("A3:A4")), regions);
+    }
+
+    /**
+     * 生成每行20列、每2列合并成一个区域的文件
+     */
+    @SneakyThrows
+    private static String writeMergedRegions(int count) {
+        String filePath = resourcePath + "MergedRegions" + count + ".xlsx";
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(filePath)) {
+            XSSFSheet sheet = workbook.createSheet();
+            for (int i = 0; i < count / 10; i++) {
+                XSSFRow row = sheet.createRow(i);
+                for (int j = 0; j < 20; j++) {
+                    row.createCell(j).setCellValue(j);
+                }
+                for (int j = 0; j < 20; j += 2) {
+                    sheet.addMergedRegionUnsafe(new CellRangeAddress(i, i, j, j + 1));
+                }
+            }
+            workbook.write(out);
+        }
+        return filePath;
+    }
+
+    @Test
+    @DisplayName("测试并行读取多个结构相同的表单")
+    public void testReadSheets() {
+        String filePath = writeMonthlySheets(6);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            var result = WorkbookKit.reader(filePath).locate(0, 1).parallel(pool).readSheets(PersonBean.class, "name", "age");
+            Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), new ArrayList<>(result.keySet()));
+            for (var entry : result.entrySet()) {
+                Assertions.assertEquals(100, entry.getValue().size());
+                Assertions.assertEquals("第" + entry.getKey() + "月", entry.getValue().get(0).getName());
+            }
+            var some = WorkbookKit.reader(filePath).locate(0, 1).sheets(4, 1).readSheets(PersonBean.class, "name", "age");
+            Assertions.assertEquals(Arrays.asList(4, 1), new ArrayList<>(some.keySet()));
+            Assertions.assertEquals(99D, some.get(1).get(99).getAge());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @SneakyThrows
+    private static String writeMonthlySheets(int count) {
+        String filePath = resourcePath + "MonthlySheets" + count + ".xlsx";
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(filePath)) {
+            for (int i = 0; i < count; i++) {
+                XSSFSheet sheet = workbook.createSheet();
+                sheet.createRow(0).createCell(0).setCellValue("姓名");
+                for (int j = 1; j <= 100; j++) {
+                    XSSFRow row = sheet.createRow(j);
+                    row.createCell(0).setCellValue("第" + i + "月");
+                    row.createCell(1).setCellValue(j - 1);
+                }
+            }
+            workbook.write(out);
+        }
+        return filePath;
+    }
+
+    @Test
+    @DisplayName("测试共享字符串表存放到临时文件，只在内存中缓存少量字符串")
+    public void testSharedStringsCache() {
+        String filePath = writeMonthlySheets(6);
+        var expected = WorkbookKit.reader(filePath).sheet(3).read(2);
+        var result = WorkbookKit.reader(filePath).sheet(3).sharedStringsCache(2).read(2);
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals("第3月", result.get(1).get(0));
+        var sheets = WorkbookKit.reader(filePath).locate(0, 1).sharedStringsCache(1).readSheets(PersonBean.class, "name");
+        Assertions.assertEquals("第5月", sheets.get(5).get(0).getName());
+    }
+
+    @Test
+    @DisplayName("测试按固定行数分批读取，缓冲区轮流复用")
+    public void testBatch() {
+        String filePath = writeMonthlySheets(1);
+        List<Integer> sizes = new ArrayList<>();
+        Set<List<PersonBean>> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Double> ages = new ArrayList<>();
+        long rows = WorkbookKit.reader(filePath).locate(0, 1).streaming().batch(30, batch -> {
+            sizes.add(batch.size());
+            buffers.add(batch);
+            batch.forEach(person -> ages.add(person.getAge()));
+        }, PersonBean.class, "name", "age");
+        Assertions.assertEquals(100, rows);
+        Assertions.assertEquals(Arrays.asList(30, 30, 30, 10), sizes);
+        Assertions.assertEquals(2, buffers.size());
+        Assertions.assertEquals(99D, ages.get(99));
+        Assertions.assertThrows(IllegalStateException.class, () -> WorkbookKit.reader(filePath).locate(0, 1).batch(10, batch -> {
+            throw new IllegalStateException();
+        }, PersonBean.class, "name", "age"));
+    }
+
+    @Test
+    @DisplayName("测试按列读取，数字存放在基本类型数组中，文本按字典编码")
+    public void testReadColumns() {
+        var frame = WorkbookKit.reader(resourcePath + "ReadContent.xlsx").locate(0, 1).readColumns("no", "name", "age", "isMale");
+        Assertions.assertEquals(3, frame.getRowCount());
+        Assertions.assertEquals(ColumnVector.Type.DOUBLE, frame.getColumn("age").getType());
+        Assertions.assertArrayEquals(new double[]{20D, 19D, 18D}, frame.getColumn("age").getDoubles());
+        Assertions.assertEquals(ColumnVector.Type.BOOLEAN, frame.getColumn("isMale").getType());
+        Assertions.assertEquals(Arrays.asList("张三", "李四", "王五"), frame.getColumn(1).getDictionary());
+        Assertions.assertEquals(19D, frame.getColumn("age").getDouble(1));
+        Assertions.assertFalse(frame.getColumn("isMale").getBoolean(1));
+        Assertions.assertEquals("true", frame.getColumn("isMale").getString(0));
+        // 类型不兼容时报出列名和实际类型
+        var name = frame.getColumn("name");
+        Assertions.assertEquals("column 'name' is STRING, cannot getDouble",
+                Assertions.assertThrows(IllegalStateException.class, () -> name.getDouble(0)).getMessage());
+        Assertions.assertThrows(IllegalStateException.class, () -> name.getLong(0));
+        Assertions.assertThrows(IllegalStateException.class, () -> name.getBoolean(0));
+        var age = frame.getColumn("age");
+        Assertions.assertThrows(IllegalStateException.class, () -> age.getBoolean(0));
+        var isMale = frame.getColumn("isMale");
+        Assertions.assertThrows(IllegalStateException.class, () -> isMale.getLong(0));
+        // 整数存放在long数组中 遇到小数升级成double
+        var column = new ColumnVector("millis");
+        column.append((Object) 1700000000123L);
+        column.append((Object) null);
+        column.append((Object) 2L);
+        Assertions.assertEquals(ColumnVector.Type.LONG, column.getType());
+        Assertions.assertEquals(1700000000123L, column.getLong(0));
+        column.append(2.5D);
+        Assertions.assertEquals(ColumnVector.Type.DOUBLE, column.getType());
+        Assertions.assertEquals(2D, column.getDouble(2));
+        // 布尔值和数字混在一起时升级成文本 不互相转换
+        column.append(true);
+        Assertions.assertEquals(ColumnVector.Type.STRING, column.getType());
+        Assertions.assertEquals("2.5", column.getString(3));
+        Assertions.assertEquals("true", column.getString(4));
+        column = new ColumnVector("flag");
+        column.append(false);
+        column.append(1D);
+        Assertions.assertEquals(ColumnVector.Type.STRING, column.getType());
+        Assertions.assertEquals(Arrays.asList("false", "1"), column.getDictionary());
+        // 表头是文本 整列升级成文本
+        frame = WorkbookKit.reader(resourcePath + "ReadContent.xlsx").readColumns("no");
+        Assertions.assertEquals(ColumnVector.Type.STRING, frame.getColumn(0).getType());
+        Assertions.assertEquals("2", frame.getColumn(0).getString(2));
+        // 空行和空单元格记录在位图中
+        frame = WorkbookKit.reader(writeMergedContent()).locate(0, 1).streaming().readColumns("a", "b", "c");
+        Assertions.assertEquals(6, frame.getRowCount());
+        Assertions.assertTrue(frame.getColumn("c").isNull(2));
+        Assertions.assertFalse(frame.getColumn("c").isNull(1));
+        Assertions.assertEquals(ColumnVector.Type.DOUBLE, frame.getColumn("c").getType());
+        Assertions.assertEquals("2", frame.getColumn("c").getString(1));
+        // 合并区域中非首个单元格也是空值
+        Assertions.assertTrue(frame.getColumn("c").isNull(5));
+        Assertions.assertEquals("C", frame.getColumn("b").getString(5));
+        Assertions.assertTrue(frame.getColumn("a").isNull(3));
+    }
+
+    @Test
+    @DisplayName("测试公式单元格返回缓存的结果或者重新计算的结果")
+    public void testReadFormula() {
+        String filePath = writeMergedContent();
+        // 生成的文件中没有缓存结果
+        var cached = WorkbookKit.reader(filePath).locate(3, 1).formula(FormulaMode.CACHED).read(1);
+        Assertions.assertEquals(0D, cached.get(0).get(0));
+        var evaluated = WorkbookKit.reader(filePath).locate(3, 1).formula(FormulaMode.EVALUATED).read(1);
+        Assertions.assertEquals(3D, evaluated.get(0).get(0));
+        Assertions.assertEquals(true, evaluated.get(1).get(0));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> WorkbookKit.reader(filePath).streaming().formula(FormulaMode.EVALUATED).read(1));
+        // 计算后保存 文件中就有了缓存结果
+        String savedPath = writeEvaluatedContent(filePath);
+        Assertions.assertEquals(3D, WorkbookKit.reader(savedPath).locate(3, 1).formula(FormulaMode.CACHED).read(1).get(0).get(0));
+        Assertions.assertEquals(3D, WorkbookKit.reader(savedPath).locate(3, 1).streaming().formula(FormulaMode.CACHED).read(1).get(0).get(0));
+        Assertions.assertEquals("SUM(C2:C3)", WorkbookKit.reader(savedPath).locate(3, 1).streaming().read(1).get(0).get(0));
+    }
+
+    @SneakyThrows
+    private static String writeEvaluatedContent(String filePath) {
+        String savedPath = resourcePath + "EvaluatedContent.xlsx";
+        try (FileInputStream in = new FileInputStream(filePath); XSSFWorkbook workbook = new XSSFWorkbook(in);
+             FileOutputStream out = new FileOutputStream(savedPath)) {
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            workbook.write(out);
+        }
+        return savedPath;
+    }
+
+    @Test
+    @DisplayName("测试流式读取xls文件，结果和用户模型一致")
+    public void testStreamingReadLegacy() {
+        String filePath = writeLegacyContent();
+        for (FormulaMode mode : new FormulaMode[]{FormulaMode.FORMULA, FormulaMode.CACHED}) {
+            var expected = WorkbookKit.reader(filePath).sheet(1).locate(0, 1).formula(mode).read(6);
+            var lines = WorkbookKit.reader(filePath).sheet(1).locate(0, 1).formula(mode).streaming().read(6);
+            Assertions.assertEquals(expected, lines);
+        }
+        var lines = WorkbookKit.reader(filePath).sheet(1).locate(0, 1).streaming().read(6);
+        Assertions.assertEquals(Arrays.asList("A", null, 1D, "SUM(C2:C3)", "CONCATENATE(A2,\"x\")", "1/0"), lines.get(0));
+        Assertions.assertEquals(Arrays.asList(null, null, 2D, true, null, null), lines.get(1));
+        Assertions.assertEquals(Arrays.asList(null, null, null, null, null, null), lines.get(2));
+        Assertions.assertEquals(Arrays.asList("", null, null, null, null, null), lines.get(3));
+        Assertions.assertEquals(Arrays.asList(null, "C", null, null, null, null), lines.get(5));
+        var cached = WorkbookKit.reader(filePath).sheet(1).locate(3, 1).formula(FormulaMode.CACHED).streaming().read(3);
+        Assertions.assertEquals(Arrays.asList(3D, "Ax", "#DIV/0!"), cached.get(0));
+        var sheets = WorkbookKit.reader(filePath).readSheets(List.class, "name", "age");
+        Assertions.assertEquals(Arrays.asList(0, 1), new ArrayList<>(sheets.keySet()));
+        Assertions.assertEquals(Collections.singletonList(Arrays.asList("第一个表单", null)), sheets.get(0));
+    }
+
+    /**
+     * 生成一个xls文件，第二个表单带合并单元格、公式、空行和空单元格
+     */
+    @SneakyThrows
+    private static String writeLegacyContent() {
+        String filePath = resourcePath + "LegacyContent.xls";
+        try (HSSFWorkbook workbook = new HSSFWorkbook(); FileOutputStream out = new FileOutputStream(filePath)) {
+            workbook.createSheet().createRow(0).createCell(0).setCellValue("第一个表单");
+            HSSFSheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue("表头");
+            HSSFRow row = sheet.createRow(1);
+            row.createCell(0).setCellValue("A");
+            row.createCell(2).setCellValue(1D);
+            row.createCell(3).setCellFormula("SUM(C2:C3)");
+            row.createCell(4).setCellFormula("CONCATENATE(A2,\"x\")");
+            row.createCell(5).setCellFormula("1/0");
+            row = sheet.createRow(2);
+            row.createCell(1).setCellValue("B");
+            row.createCell(2).setCellValue(2D);
+            row.createCell(3).setCellValue(true);
+            sheet.addMergedRegion(new CellRangeAddress(1, 2, 0, 1));
+            // 第4行缺失 第5行只有空单元格
+            row = sheet.createRow(4);
+            row.createCell(0).setCellStyle(workbook.createCellStyle());
+            row = sheet.createRow(6);
+            row.createCell(1).setCellValue("C");
+            row.createCell(2).setCellValue("D");
+            sheet.addMergedRegion(new CellRangeAddress(6, 6, 1, 2));
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            workbook.write(out);
+        }
+        return filePath;
+    }
+
+    @Test
+    @DisplayName("测试读取CSV文件，引号中可以有分隔符、换行和引号")
+    @SneakyThrows
+    public void testReadCsv() {
+        String content = "\uFEFFname,age,remark\r\n张三,18,\"a,b\"\r\n\"李\"\"四\"\"\",,\"第一行\n第二行\"\r\n\n王五,20\n";
+        String filePath = resourcePath + "People.csv";
+        Files.write(Paths.get(filePath), content.getBytes(StandardCharsets.UTF_8));
+        var people = WorkbookKit.read(filePath, 0, 1, TypedBean.class, "name", "age");
+        Assertions.assertEquals(Arrays.asList(new TypedBean().setName("张三").setAge(18), new TypedBean().setName("李\"四\""),
+                new TypedBean(), new TypedBean().setName("王五").setAge(20)), people);
+        var lines = WorkbookKit.read(filePath, 1, 1, 2);
+        Assertions.assertEquals(Arrays.asList("18", "a,b"), lines.get(0));
+        Assertions.assertEquals(Arrays.asList("", "第一行\n第二行"), lines.get(1));
+        Assertions.assertEquals(Arrays.asList(null, null), lines.get(2));
+        Assertions.assertEquals(Arrays.asList("20", null), lines.get(3));
+        // 映射窗口比一行还小时 从行首重新映射并扩大窗口
+        try (SheetCursor cursor = new CsvSheetCursor(filePath, new ReadOptions().setStartY(1), ',', StandardCharsets.UTF_8, 4)) {
+            Assertions.assertEquals(lines, WorkbookKit.internalRead(cursor, 1, new Row2ListProcessor(), 2));
+        }
+        // 其他分隔符和编码
+        String gbkPath = resourcePath + "People.txt";
+        Files.write(Paths.get(gbkPath), content.substring(1).replace(',', ';').getBytes("GBK"));
+        var gbk = WorkbookKit.reader(gbkPath).csv(';', Charset.forName("GBK")).locate(0, 1).read(TypedBean.class, "name", "age");
+        Assertions.assertEquals(people, gbk);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WorkbookKit.reader(filePath).csv(',', StandardCharsets.UTF_16).read(1));
+        // GBK多字节字符的后续字节可能是 | 不能作为分隔符 UTF-8可以
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WorkbookKit.reader(gbkPath).csv('|', Charset.forName("GBK")).read(1));
+        String pipePath = resourcePath + "People.psv";
+        Files.write(Paths.get(pipePath), content.replace(',', '|').getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(people, WorkbookKit.reader(pipePath).csv('|', StandardCharsets.UTF_8).locate(0, 1).read(TypedBean.class, "name", "age"));
+    }
+
+    @Test
+    @DisplayName("测试复用同一个RowView逐行统计")
+    public void testForEachView() {
+        String filePath = writeMonthlySheets(1);
+        double[] sum = new double[1];
+        Set<RowView> views = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<List<Object>> copies = new ArrayList<>();
+        long rows = WorkbookKit.reader(filePath).locate(0, 1).forEach(view -> {
+            sum[0] += view.getDouble(view.indexOf("age"));
+            views.add(view);
+            copies.add(view.toList());
+        }, "name", "age");
+        Assertions.assertEquals(100, rows);
+        Assertions.assertEquals(4950D, sum[0]);
+        Assertions.assertEquals(1, views.size());
+        Assertions.assertEquals(WorkbookKit.read(filePath, 0, 1, 2), copies);
+        RowView view = views.iterator().next();
+        Assertions.assertEquals("第0月", view.get("name"));
+        Assertions.assertEquals(Arrays.asList("name", "age"), view.getFields());
+        Assertions.assertEquals(-1, view.indexOf("male"));
+    }
+
+    @Test
+    @DisplayName("测试数字和布尔单元格按基本类型推入处理器")
+    public void testPushPrimitive() {
+        String xlsx = writeMergedContent();
+        String xls = writeLegacyContent();
+        List<WorkbookReader> readers = Arrays.asList(WorkbookKit.reader(xlsx), WorkbookKit.reader(xlsx).streaming(),
+                WorkbookKit.reader(xls).sheet(1), WorkbookKit.reader(xls).sheet(1).streaming());
+        for (WorkbookReader reader : readers) {
+            List<String> pushed = new ArrayList<>();
+            reader.locate(0, 1).read(new RowProcessor<Void>() {
+                @Override
+                public void push(int index, Object data) {
+                    pushed.add("object");
+                }
+
+                @Override
+                public void pushDouble(int index, double data) {
+                    pushed.add("double:" + data);
+                }
+
+                @Override
+                public void pushBoolean(int index, boolean data) {
+                    pushed.add("boolean:" + data);
+                }
+
+                @Override
+                public void pushString(int index, String data) {
+                    pushed.add("string:" + data);
+                }
+
+                @Override
+                public void pushNull(int index) {
+                    pushed.add("null");
+                }
+
+                @Override
+                public Void pull() {
+                    return null;
+                }
+            }, 4);
+            Assertions.assertEquals(Arrays.asList("string:A", "null", "double:1.0", "string:SUM(C2:C3)",
+                    "null", "null", "double:2.0", "boolean:true"), pushed.subList(0, 8));
+            Assertions.assertFalse(pushed.contains("object"));
+        }
+        var beans = WorkbookKit.reader(xls).sheet(1).streaming().locate(2, 1).read(TypedBean.class, "age", "male");
+        Assertions.assertEquals(new TypedBean().setAge(2).setMale(true), beans.get(1));
+    }
+
+    @Test
+    @DisplayName("测试日期格式的单元格转换成日期，每个样式只判断一次")
+    @SneakyThrows
+    public void testReadDates() {
+        LocalDateTime time = LocalDateTime.of(2021, 6, 1, 8, 30);
+        List<String> paths = new ArrayList<>();
+        for (Workbook workbook : Arrays.asList(new XSSFWorkbook(), new HSSFWorkbook())) {
+            String filePath = resourcePath + "Dates." + (workbook instanceof HSSFWorkbook ? "xls" : "xlsx");
+            try (Workbook w = workbook; FileOutputStream out = new FileOutputStream(filePath)) {
+                CellStyle dateStyle = w.createCellStyle();
+                dateStyle.setDataFormat(w.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+                Sheet sheet = w.createSheet();
+                for (int i = 0; i < 3; i++) {
+                    Row row = sheet.createRow(i);
+                    Cell cell = row.createCell(0);
+                    cell.setCellValue(time.plusDays(i));
+                    cell.setCellStyle(dateStyle);
+                    row.createCell(1).setCellValue(i);
+                }
+                w.write(out);
+            }
+            paths.add(filePath);
+        }
+        for (String filePath : paths) {
+            for (WorkbookReader reader : Arrays.asList(WorkbookKit.reader(filePath), WorkbookKit.reader(filePath).streaming())) {
+                var lines = reader.dates(DateMode.LOCAL_DATE_TIME).read(2);
+                Assertions.assertEquals(Arrays.asList(time.plusDays(2), 2D), lines.get(2));
+                Assertions.assertEquals(time.toLocalDate(), reader.dates(DateMode.LOCAL_DATE).read(1).get(0).get(0));
+                Assertions.assertEquals(DateKit.parse2Milli(time), reader.dates(DateMode.EPOCH_MILLI).read(1).get(0).get(0));
+                Assertions.assertEquals(DateUtil.getExcelDate(time), reader.dates(DateMode.RAW).read(1).get(0).get(0));
+                var beans = reader.dates(DateMode.LOCAL_DATE).read(DatedBean.class, "date", "count");
+                Assertions.assertEquals(new DatedBean(time.toLocalDate().plusDays(1), 1), beans.get(1));
+            }
+        }
+        int[] lookups = new int[1];
+        DateStyleCache cache = new DateStyleCache(DateMode.LOCAL_DATE, false, style -> ++lookups[0] > 0 && style == 1);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i % 2 == 1, cache.isDate(i % 2, 44000D));
+        }
+        Assertions.assertEquals(2, lookups[0]);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class DatedBean {
+        private LocalDate date;
+        private int count;
+    }
+
+    @Test
+    @DisplayName("测试只读取指定的列和行数，读够之后停止解析")
+    public void testReadWindow() {
+        String filePath = writeMonthlySheets(1);
+        var preview = WorkbookKit.reader(filePath).locate(1, 1).streaming().limit(5).read(1);
+        Assertions.assertEquals(5, preview.size());
+        Assertions.assertEquals(Collections.singletonList(4D), preview.get(4));
+        var range = WorkbookKit.reader(filePath).locate(0, 1).streaming().endRow(10).read("name", "age");
+        Assertions.assertEquals(10, range.size());
+        Assertions.assertEquals(range, WorkbookKit.reader(filePath).locate(0, 1).endRow(10).read("name", "age"));
+        Assertions.assertEquals(2, WorkbookKit.reader(filePath).locate(0, 1).limit(5).endRow(2).read(2).size());
+        // 不处理合并单元格时合并区域中的内容原样返回
+        var merged = WorkbookKit.reader(writeMergedContent()).locate(0, 2).streaming().ignoreMergedRegions().limit(1).read(2);
+        Assertions.assertEquals(Arrays.asList(null, "B"), merged.get(0));
+    }
+
+    @Test
+    @DisplayName("测试流水线读取，多个线程转换，结果仍然按行的顺序返回")
+    public void testReadPipelined() {
+        String filePath = writeMonthlySheets(1);
+        var expected = WorkbookKit.reader(filePath).locate(0, 1).read(PersonBean.class, "name", "age");
+        var lines = WorkbookKit.reader(filePath).locate(0, 1).pipelined(4).read(PersonBean.class, "name", "age");
+        Assertions.assertEquals(expected, lines);
+        // 转换耗时不均匀时 结果仍然按行的顺序返回
+        Random random = new Random();
+        var merged = WorkbookKit.reader(writeMergedContent()).locate(0, 1).pipelined(3).read(() -> new Row2ListProcessor() {
+            @SneakyThrows
+            @Override
+            public List<Object> pull() {
+                Thread.sleep(random.nextInt(5));
+                return super.pull();
+            }
+        }, 4);
+        Assertions.assertEquals(WorkbookKit.read(resourcePath + "MergedContent.xlsx", 0, 1, 4), merged);
+        // 数字经过队列后仍然不装箱
+        var boxed = WorkbookKit.reader(filePath).locate(0, 1).pipelined(2).read(() -> new Row2ListProcessor() {
+            @Override
+            public void pushDouble(int index, double data) {
+                super.push(index, "double:" + data);
+            }
+        }, 2);
+        Assertions.assertEquals(Arrays.asList("第0月", "double:99.0"), boxed.get(99));
+    }
+
+    @Test
+    @DisplayName("测试流水线读取时转换线程全部失败，抛出异常而不是一直等待")
+    @SneakyThrows
+    public void testReadPipelinedFailure() {
+        Path path = Paths.get(resourcePath, "Pipelined.csv");
+        Files.write(path, IntStream.range(0, 800).mapToObj(i -> "第" + i + "行," + i).collect(Collectors.toList()));
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> WorkbookKit.reader(path.toString()).pipelined(2)
+                    .read(() -> {
+                        throw new IllegalStateException("no processor");
+                    }, 2));
+            Assertions.assertEquals("no processor", e.getMessage());
+            // 转换到一半出错
+            Assertions.assertThrows(IllegalStateException.class, () -> WorkbookKit.reader(path.toString()).pipelined(2)
+                    .read(() -> new Row2ListProcessor() {
+                        @Override
+                        public List<Object> pull() {
+                            List<Object> line = super.pull();
+                            if ("第300行".equals(line.get(0))) throw new IllegalStateException("bad row");
+                            return line;
+                        }
+                    }, 2));
+            // 线程池已满 转换线程启动不了
+            ExecutorService executor = Executors.newFixedThreadPool(1);
+            CountDownLatch busy = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            try (var cursor = WorkbookKit.reader(path.toString()).openCursor(2)) {
+                e = Assertions.assertThrows(IllegalStateException.class, () -> PipelinedReader.read(cursor, 0, 2, Row2ListProcessor::new, 2, executor, 200));
+                Assertions.assertTrue(e.getMessage().startsWith("pipeline workers did not start"));
+            } finally {
+                // 晚启动的转换线程直接退出
+                busy.countDown();
+                executor.shutdown();
+            }
+            Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        });
+    }
+
+    @Test
+    @DisplayName("测试缓存读取结果，文件变化或者参数不同时重新读取")
+    @SneakyThrows
+    public void testCache() {
+        String filePath = writeMonthlySheets(2);
+        WorkbookCache cache = new WorkbookCache(2, 1L << 30);
+        var first = WorkbookKit.reader(filePath).cache(cache).locate(0, 1).read(PersonBean.class, "name", "age");
+        var second = WorkbookKit.reader(filePath).cache(cache).locate(0, 1).read(PersonBean.class, "name", "age");
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, cache.getHitCount());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> second.add(new PersonBean()));
+        // 参数不同是不同的条目
+        WorkbookKit.reader(filePath).cache(cache).sheet(1).locate(0, 1).read(PersonBean.class, "name", "age");
+        Assertions.assertEquals(2, cache.getMissCount());
+        // 文件修改后重新读取
+        Assertions.assertTrue(new File(filePath).setLastModified(new File(filePath).lastModified() - 10000));
+        var third = WorkbookKit.reader(filePath).cache(cache).locate(0, 1).read(PersonBean.class, "name", "age");
+        Assertions.assertNotSame(first, third);
+        Assertions.assertEquals(first, third);
+        // 超过条目数上限时淘汰最久没有使用的
+        WorkbookKit.build(filePath, cache);
+        Assertions.assertNotNull(WorkbookKit.build(filePath, cache).export());
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictionCount());
+        Assertions.assertEquals(2, cache.getHitCount());
+        cache.invalidate(filePath);
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0, cache.getWeight());
+        // 改变读取结果的选项都是不同的条目
+        WorkbookCache options = new WorkbookCache(16, 1L << 30);
+        WorkbookKit.reader(filePath).cache(options).locate(0, 1).read(PersonBean.class, "name", "age");
+        WorkbookKit.reader(filePath).cache(options).locate(0, 1).formula(FormulaMode.CACHED).read(PersonBean.class, "name", "age");
+        WorkbookKit.reader(filePath).cache(options).locate(0, 1).dates(DateMode.LOCAL_DATE).read(PersonBean.class, "name", "age");
+        WorkbookKit.reader(filePath).cache(options).locate(0, 1).ignoreMergedRegions().read(PersonBean.class, "name", "age");
+        Assertions.assertEquals(4, options.getMissCount());
+        Assertions.assertEquals(0, options.getHitCount());
+        // 按CSV读取的结果不会被按Excel读取命中
+        String csvPath = resourcePath + "CachedPeople.txt";
+        Files.write(Paths.get(csvPath), "name,age\n张三,18\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(1, WorkbookKit.reader(csvPath).cache(options).csv(',', StandardCharsets.UTF_8).locate(0, 1).read(PersonBean.class, "name", "age").size());
+        Assertions.assertThrows(NotOfficeXmlFileException.class, () -> WorkbookKit.reader(csvPath).cache(options).locate(0, 1).read(PersonBean.class, "name", "age"));
+    }
+
+    /**
+     * 生成一个带合并单元格、公式、空行和空单元格的文件
+     */
+    @SneakyThrows
+    private static String writeMergedContent() {
+        String filePath = resourcePath + "MergedContent.xlsx";
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(filePath)) {
+            XSSFSheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue("表头");
+            XSSFRow row = sheet.createRow(1);
+            row.createCell(0).setCellValue("A");
+            row.createCell(2).setCellValue(1D);
+            row.createCell(3).setCellFormula("SUM(C2:C3)");
+            row = sheet.createRow(2);
+            row.createCell(1).setCellValue("B");
+            row.createCell(2).setCellValue(2D);
+            row.createCell(3).setCellValue(true);
+            sheet.addMergedRegion(new CellRangeAddress(1, 2, 0, 1));
+            // 第4行缺失 第5行只有空单元格
+            row = sheet.createRow(4);
+            row.createCell(0).setCellStyle(workbook.createCellStyle());
+            row = sheet.createRow(6);
+            row.createCell(1).setCellValue("C");
+            row.createCell(2).setCellValue("D");
+            sheet.addMergedRegion(new CellRangeAddress(6, 6, 1, 2));
+            workbook.write(out);
+        }
+        return filePath;
+    }
+
+    @Test
+    @DisplayName("测试读取到对象时按字段类型转换，绑定计划按类缓存")
+    public void testRead2TypedBean() {
+        var result = WorkbookKit.read(resourcePath + "ReadContent.xlsx", 0, 1, TypedBean.class, "no", "name", "age", "male");
+        log.info(result.toString());
+        Assertions.assertEquals(3, result.size());
+        Assertions.assertEquals(new TypedBean("1", "张三", 20, BigDecimal.ZERO, true), result.get(0).setScore(BigDecimal.ZERO));
+        Assertions.assertEquals(19, result.get(1).getAge());
+        Assertions.assertFalse(result.get(1).isMale());
+        var scores = WorkbookKit.read(resourcePath + "ReadContent.xlsx", 2, 1, TypedBean.class, "score");
+        Assertions.assertEquals(new BigDecimal("18.0"), scores.get(2).getScore());
+        Assertions.assertSame(BeanBinding.of(TypedBean.class, "score"), BeanBinding.of(TypedBean.class, "score"));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Accessors(chain = true)
+    static class TypedBean {
+        private String no;
+        private String name;
+        private int age;
+        private BigDecimal score;
+        private boolean male;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -99,4 +820,221 @@ public class WorkbookKitTest {
                 .beanContents(Collections.singletonList(new PersonBean("张三", 20D, true)))
                 .export(resourcePath + "WriteContent" + System.currentTimeMillis() + ".xlsx");
     }
+
+    @Test
+    @DisplayName("测试流式导出超过内存窗口的行数，保留模板的表头和第一行样式")
+    @SneakyThrows
+    public void testWriteStreaming() {
+        WorkbookTemplate template = WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(0, 0, 4)
+                .streaming(10);
+        for (int i = 1; i <= 1000; i++) {
+            template.content(i, "第" + i + "人", i % 100, i % 2 == 0);
+        }
+        String filePath = resourcePath + "WriteStreaming.xlsx";
+        template.export(filePath);
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(filePath))) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            Assertions.assertEquals(1000, sheet.getLastRowNum());
+            Assertions.assertEquals("姓名", sheet.getRow(0).getCell(1).getStringCellValue());
+            // 模板之外的行沿用第一行的样式
+            Assertions.assertEquals(sheet.getRow(1).getCell(1).getCellStyle().getIndex(), sheet.getRow(1000).getCell(1).getCellStyle().getIndex());
+        }
+        var result = WorkbookKit.read(filePath, 1, 1, 3);
+        Assertions.assertEquals(1000, result.size());
+        Assertions.assertIterableEquals(Arrays.asList("第1000人", 0.0D, true), result.get(999));
+    }
+
+    @Test
+    @DisplayName("测试直接导出到输出流和文件")
+    @SneakyThrows
+    public void testWriteOutputStream() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(0, 0, 4)
+                .content(1, "张三", 20, true)
+                .export(out);
+        Path first = Files.write(Paths.get(resourcePath, "WriteOutputStream.xlsx"), out.toByteArray());
+        // 上级目录不存在时自动创建
+        Path path = Paths.get(resourcePath, "export", "WriteOutputStream.xlsx");
+        WorkbookKit.build(first.toString())
+                .header(0, 0, 4)
+                .locateContent(0, 2)
+                .content(2, "李四", 19, false)
+                .export(path);
+        var result = WorkbookKit.read(path.toString(), 1, 1, 3);
+        Assertions.assertIterableEquals(Arrays.asList("张三", 20.0D, true), result.get(0));
+        Assertions.assertIterableEquals(Arrays.asList("李四", 19.0D, false), result.get(1));
+    }
+
+    @Test
+    @DisplayName("测试按 表头__序号、表头、序号 的顺序取值，同一列可以是不同类型")
+    public void testWriteKeys() {
+        Map<String, Object> first = new HashMap<>();
+        first.put("姓名", "张三");
+        first.put("1", "李四");
+        first.put("2", 20);
+        first.put("年龄__2", 21.5D);
+        Map<String, Object> second = new HashMap<>();
+        second.put("1", "王五");
+        second.put("年龄", "十八");
+        second.put("是否男", false);
+        String filePath = resourcePath + "WriteKeys.xlsx";
+        WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(0, 0, 4)
+                .content(first)
+                .content(second)
+                .export(filePath);
+        var result = WorkbookKit.read(filePath, 1, 1, 3);
+        Assertions.assertIterableEquals(Arrays.asList("张三", 21.5D, ""), result.get(0));
+        Assertions.assertIterableEquals(Arrays.asList("王五", "十八", false), result.get(1));
+    }
+
+    @Test
+    @DisplayName("测试导出时才逐行拉取内容，和内存中的内容按添加顺序写入")
+    public void testWriteLazyContents() {
+        int[] pulled = {0};
+        Iterator<Map<String, Object>> iterator = IntStream.range(0, 500).mapToObj(i -> {
+            pulled[0]++;
+            return Collections.<String, Object>singletonMap("姓名", "迭代" + i);
+        }).iterator();
+        boolean[] closed = {false};
+        int[] supplied = {0};
+        WorkbookTemplate template = WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(0, 0, 4)
+                .streaming(50)
+                .content(1, "张三", 20, true)
+                .contents(iterator)
+                .contents(Stream.of(Collections.<String, Object>singletonMap("姓名", "流")).onClose(() -> closed[0] = true))
+                .contents(() -> supplied[0] < 3 ? Collections.singletonMap("姓名", "供应" + supplied[0]++) : null)
+                .content(2, "李四", 19, false);
+        Assertions.assertEquals(0, pulled[0]);
+        String filePath = resourcePath + "WriteLazyContents.xlsx";
+        template.export(filePath);
+        Assertions.assertEquals(500, pulled[0]);
+        Assertions.assertTrue(closed[0]);
+        var names = WorkbookKit.read(filePath, 1, 1, 1).stream().map(row -> row.get(0)).collect(Collectors.toList());
+        Assertions.assertEquals(506, names.size());
+        Assertions.assertEquals(Arrays.asList("张三", "迭代0"), names.subList(0, 2));
+        Assertions.assertEquals(Arrays.asList("迭代499", "流", "供应0", "供应1", "供应2", "李四"), names.subList(500, 506));
+    }
+
+    @Test
+    @DisplayName("测试对象按fields调用getter导出，没有getter的字段为空")
+    public void testWriteBeans() {
+        String filePath = resourcePath + "WriteBeans.xlsx";
+        List<Object> beans = new ArrayList<>(Arrays.asList(new PersonBean("张三", 20D, true), new PersonBean("李四", null, false)));
+        WorkbookTemplate template = WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(0, 0, 4, "unknown", "name", "age", "isMale")
+                .beanContents(beans)
+                .content(Collections.singletonMap("姓名", "王五"));
+        // 调用后复用列表不影响导出的内容
+        beans.clear();
+        beans.add(new TypedBean().setName("赵六").setAge(18));
+        template.beanContents(beans).export(filePath);
+        var result = WorkbookKit.read(filePath, 0, 1, 4);
+        Assertions.assertIterableEquals(Arrays.asList("", "张三", 20.0D, true), result.get(0));
+        Assertions.assertIterableEquals(Arrays.asList("", "李四", "", false), result.get(1));
+        Assertions.assertIterableEquals(Arrays.asList("", "王五", "", ""), result.get(2));
+        Assertions.assertIterableEquals(Arrays.asList("", "赵六", 18.0D, ""), result.get(3));
+    }
+
+    @Test
+    @DisplayName("测试按值的类型自动设置日期格式，相同格式的单元格共用一个样式")
+    @SneakyThrows
+    public void testWriteFormats() {
+        WorkbookTemplate template = WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(0, 0, 4)
+                .format(2, "0.00");
+        for (int i = 0; i < 100; i++) {
+            template.content(i % 2 == 0 ? LocalDate.of(2022, 1, 1).plusDays(i) : LocalDateTime.of(2022, 1, 1, 8, 30).plusDays(i),
+                    "第" + i + "人", i + 0.5D, true);
+        }
+        String filePath = resourcePath + "WriteFormats.xlsx";
+        template.export(filePath);
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(filePath))) {
+            XSSFSheet sheet = workbook.getSheetAt(0);
+            Assertions.assertEquals("yyyy-mm-dd", sheet.getRow(1).getCell(0).getCellStyle().getDataFormatString());
+            Assertions.assertEquals("yyyy-mm-dd hh:mm:ss", sheet.getRow(2).getCell(0).getCellStyle().getDataFormatString());
+            Assertions.assertEquals("0.00", sheet.getRow(1).getCell(2).getCellStyle().getDataFormatString());
+            Assertions.assertEquals("General", sheet.getRow(1).getCell(1).getCellStyle().getDataFormatString());
+            // 相同格式共用样式
+            Assertions.assertEquals(sheet.getRow(1).getCell(0).getCellStyle().getIndex(), sheet.getRow(99).getCell(0).getCellStyle().getIndex());
+            Assertions.assertEquals(sheet.getRow(2).getCell(0).getCellStyle().getIndex(), sheet.getRow(100).getCell(0).getCellStyle().getIndex());
+            Assertions.assertEquals(sheet.getRow(2).getCell(2).getCellStyle().getIndex(), sheet.getRow(100).getCell(2).getCellStyle().getIndex());
+        }
+        var result = WorkbookKit.reader(filePath).locate(0, 1).dates(DateMode.LOCAL_DATE_TIME).read(2);
+        Assertions.assertEquals(LocalDateTime.of(2022, 1, 1, 0, 0), result.get(0).get(0));
+        Assertions.assertEquals(LocalDateTime.of(2022, 1, 2, 8, 30), result.get(1).get(0));
+    }
+
+    @Test
+    @DisplayName("测试复制表单后多个表单并行流式导出到一个文件")
+    @SneakyThrows
+    public void testWriteSheetsParallel() {
+        WorkbookTemplate template = WorkbookKit.build(resourcePath + "WriteContent.xlsx")
+                .header(1, 0, 3, "name", "age", "isMale")
+                .numberFormat("0.0")
+                .streaming(100)
+                .parallel();
+        List<WorkbookTemplate> sheets = new ArrayList<>();
+        sheets.add(template);
+        for (int i = 1; i < 6; i++) {
+            sheets.add(template.cloneSheet("第" + i + "月"));
+        }
+        for (int i = 0; i < sheets.size(); i++) {
+            int month = i;
+            sheets.get(i).beanContents(IntStream.range(0, 2000)
+                    .mapToObj(j -> new PersonBean(month + "月" + j, (double) j, j % 2 == 0))
+                    .collect(Collectors.toList()));
+        }
+        String filePath = resourcePath + "WriteSheetsParallel.xlsx";
+        // 从任意一个表单导出都会导出所有表单
+        sheets.get(3).export(filePath);
+        var result = WorkbookKit.reader(filePath).locate(1, 1).readSheets(PersonBean.class, "name", "age", "isMale");
+        Assertions.assertEquals(6, result.size());
+        for (int i = 0; i < 6; i++) {
+            List<PersonBean> rows = result.get(i);
+            Assertions.assertEquals(2000, rows.size());
+            Assertions.assertEquals(new PersonBean(i + "月1999", 1999D, false), rows.get(1999));
+        }
+        Assertions.assertSame(template, template.sheet(0));
+        // 所有表单并行使用样式缓存 同一个格式只创建一个样式
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(filePath))) {
+            short style = workbook.getSheetAt(0).getRow(1).getCell(2).getCellStyle().getIndex();
+            Assertions.assertEquals("0.0", workbook.getCellStyleAt(style).getDataFormatString());
+            for (int i = 1; i < 6; i++) {
+                Assertions.assertEquals(style, workbook.getSheetAt(i).getRow(2000).getCell(2).getCellStyle().getIndex());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("测试从缓存的模板快照并发创建互相独立的模板导出")
+    @SneakyThrows
+    public void testCachedTemplateConcurrent() {
+        WorkbookCache cache = new WorkbookCache(4, 1L << 30);
+        String templatePath = resourcePath + "WriteContent.xlsx";
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<byte[]> files = pool.submit(() -> IntStream.range(0, 8).parallel()
+                    .mapToObj(i -> WorkbookKit.build(templatePath, cache)
+                            .header(0, 0, 4)
+                            .content(i, "第" + i + "人", 20, true)
+                            .export())
+                    .collect(Collectors.toList())).get();
+            for (int i = 0; i < files.size(); i++) {
+                String filePath = resourcePath + "CachedTemplate" + i + ".xlsx";
+                Files.write(Paths.get(filePath), files.get(i));
+                var result = WorkbookKit.read(filePath, 0, 1, 4);
+                Assertions.assertEquals(1, result.size());
+                Assertions.assertIterableEquals(Arrays.asList((double) i, "第" + i + "人", 20.0D, true), result.get(0));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // 同一个模板文件只有一个条目
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(8, cache.getHitCount() + cache.getMissCount());
+    }
 }